@@ -1,18 +1,20 @@
 package com.aws;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -24,24 +26,34 @@ import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.amazonaws.util.IOUtils;
 import com.main.ClientMain;
 import com.main.Context;
 import com.main.ServerMain;
-import com.map.Mapper;
+import com.map.InputSplit;
+import com.map.SplitFetcher;
+import com.map.SplitPlanner;
+import com.net.PartitionFetcher;
+import com.net.SortClient;
+import com.reduce.GroupingIterator;
 import com.reduce.Reducer;
-import com.sort.SortObject;
-import com.utils.BufferedReaderIterable;
-import com.utils.FileMerger;
 import com.utils.FileUtils;
+import com.utils.GrowingFileInputStream;
 import com.utils.CollectionUtils;
+import com.utils.RecordSource;
 
 /**
  * This class helps us manage connections to AWS services
@@ -49,6 +61,8 @@ import com.utils.CollectionUtils;
 public class AWSManager {
 	AmazonS3 s3;	
 	final static short MAX_RETRY = 3;
+	// How long a node waits for the backup of a partition that its node may still be uploading
+	private static final long BACKUP_WAIT = 10 * 60 * 1000;
 
 	public AWSManager() {
 		this.s3 = configureS3();
@@ -81,63 +95,46 @@ public class AWSManager {
 	}
 
 	/**
-	 * This method gets all the files from S3 and sorts the files according to their size.These files are then partitioned
-	 *  based on the number of slave nodes.File in each partition is then read and then the concerned value
-	 * (temperature here) is put in an ArrayList.
+	 * This method gets all the map output files from S3 and balances them over the slave nodes by their size, so that
+	 * every node gets a near-equal number of bytes. Files assigned to this node are downloaded to the given local
+	 * directory. Each map output file is a sorted run.
 	 * @param clientId
-	 * @return
+	 * @param localDir
+	 * @return paths of the downloaded files
 	 */
-	public ArrayList<SortObject> getAllFiles(int clientId)  {
-		ArrayList<SortObject> sortRecords = new ArrayList<SortObject>();
+	public ArrayList<String> getAllFiles(int clientId, String localDir)  {
+		ArrayList<String> localFiles = new ArrayList<String>();
 		short retryCount = 0;
 		boolean retry = false;
 		/* (Run by Client) */
 		do{
 			try {
 				// fetching filenames depending on count
-				ObjectListing objectListing = s3.listObjects(new ListObjectsRequest()
-						.withBucketName(ClientMain.OUTPUT_BUCKET)
-						.withPrefix(ClientMain.MAP_PATH + "/")
-						.withDelimiter("/"));
-				TreeMap<Long, String> filenamesMap = new TreeMap<Long, String>();
-				for (S3ObjectSummary objectSummary : objectListing.getObjectSummaries()) {
-					filenamesMap.put(objectSummary.getSize(), objectSummary.getKey());			
-				}
-				TreeSet<String> filenamesTree = new TreeSet<String>(filenamesMap.values());
-				filenamesTree.remove(ClientMain.MAP_PATH+"/");
-
-				// save all filenames to a list
-				ArrayList<String> fileList = new ArrayList<String>();
-				fileList.addAll(filenamesTree);
-
-				List<List<String>> listPartitions = CollectionUtils.partition(fileList, ClientMain.N_INSTANCES);
-				String filenames = "";
-				for (List<String> elementList : listPartitions){
-					if (elementList.size() > clientId){
-						filenames = StringUtils.join(new String[]{filenames, elementList.get(clientId)}, ",");
-					}
+				TreeMap<String, Long> filesMap = new TreeMap<String, Long>();
+				for (S3ObjectSummary objectSummary : listAllObjects(ClientMain.OUTPUT_BUCKET, ClientMain.MAP_PATH + "/")) {
+					filesMap.put(objectSummary.getKey(), objectSummary.getSize());
 				}
-
-				filenames = filenames.substring(1);
-				// fetching only part of actual data
-				String[] filenamesList = filenames.split(",");
-				int counter = 0;
+				filesMap.remove(ClientMain.MAP_PATH+"/");
+				// give every node a near-equal number of bytes
+				List<String> filenamesList = CollectionUtils.balance(new ArrayList<String>(filesMap.keySet()),
+						new ArrayList<Long>(filesMap.values()), ClientMain.N_INSTANCES).get(clientId);
+				localFiles.clear();
 				for (String filename : filenamesList) {
 					S3Object s3object = this.s3.getObject(new GetObjectRequest(ClientMain.OUTPUT_BUCKET, filename));
-					BufferedReader reader;
+					String localFile = localDir + "/" + filename.substring(filename.lastIndexOf('/') + 1);
 					try {
-						reader = new BufferedReader(new InputStreamReader(s3object.getObjectContent()));
-						String line;
-						while ((line = reader.readLine()) != null) {
-							String[] parsedString = line.split("\t");
-							String key = parsedString[0];
-							String val = StringUtils.join(Arrays.asList(parsedString).subList(1, parsedString.length), "\t");
-							sortRecords.add(new SortObject(key, val));
+						FileOutputStream out = new FileOutputStream(localFile);
+						try {
+							IOUtils.copy(s3object.getObjectContent(), out);
+						} finally {
+							out.close();
 						}
+						localFiles.add(localFile);
 					} catch (IOException e) {
+						e.printStackTrace();
 					}
-					counter += 1;
 				}
+				retry = false;
 			}
 			catch (AmazonServiceException ase) {
 				System.out.println("Caught an AmazonServiceException, which " +
@@ -178,7 +175,184 @@ public class AWSManager {
 			}
 		}
 		while(retry);		
-		return sortRecords;
+		return localFiles;
+	}
+
+	/**
+	 * This method downloads all the files directly under the given prefix of the output bucket to a local directory.
+	 * @param prefix
+	 * @param localDir
+	 * @return the local paths of the downloaded files
+	 */
+	public ArrayList<String> getFilesWithPrefix(String prefix, String localDir) {
+		ArrayList<String> localFiles = new ArrayList<String>();
+		short retryCount = 0;
+		boolean retry = false;
+		do{
+			try {
+				localFiles.clear();
+				for (S3ObjectSummary objectSummary : listAllObjects(ClientMain.OUTPUT_BUCKET, prefix + "/")) {
+					String filename = objectSummary.getKey();
+					if (filename.endsWith("/")) {
+						continue;
+					}
+					S3Object s3object = this.s3.getObject(new GetObjectRequest(ClientMain.OUTPUT_BUCKET, filename));
+					String localFile = localDir + "/" + filename.substring(filename.lastIndexOf('/') + 1);
+					try {
+						FileOutputStream out = new FileOutputStream(localFile);
+						try {
+							IOUtils.copy(s3object.getObjectContent(), out);
+						} finally {
+							out.close();
+						}
+						localFiles.add(localFile);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+				retry = false;
+			}
+			catch (AmazonServiceException ase) {
+				System.out.println("Caught an AmazonServiceException, which " +
+						"means your request made it " +
+						"to Amazon S3, but was rejected with an error response" +
+						" for some reason.");
+				System.out.println("Error Message:    " + ase.getMessage());
+				System.out.println("HTTP Status Code: " + ase.getStatusCode());
+				System.out.println("AWS Error Code:   " + ase.getErrorCode());
+				System.out.println("Error Type:       " + ase.getErrorType());
+				System.out.println("Request ID:       " + ase.getRequestId());
+				if (retryCount == MAX_RETRY){
+					retry = false;
+					System.out.println("Max Retry Limit achieved.Aborting Program: " + retryCount);
+				}
+				else{
+					retry = true;
+					retryCount += 1;
+					System.out.println("Retrying step. Retry Count: " + retryCount);
+				}
+			}  
+			catch (AmazonClientException ace) {
+				System.out.println("Caught an AmazonClientException, which " +
+						"means the client encountered " +
+						"an internal error while trying to " +
+						"communicate with S3, " +
+						"such as not being able to access the network.");
+				System.out.println("Error Message: " + ace.getMessage());
+				if (retryCount == MAX_RETRY){
+					retry = false;
+					System.out.println("Max Retry Limit achieved.Aborting Program: " + retryCount);
+				}
+				else{
+					retry = true;
+					retryCount += 1;
+					System.out.println("Retrying step. Retry Count: " + retryCount);
+				}
+			}
+		}
+		while(retry);
+		return localFiles;
+	}
+
+	/**
+	 * Lists all the objects directly under the given prefix, following truncated listings.
+	 * @param bucket
+	 * @param prefix
+	 * @return
+	 */
+	public List<S3ObjectSummary> listAllObjects(String bucket, String prefix) {
+		List<S3ObjectSummary> summaries = new ArrayList<S3ObjectSummary>();
+		ObjectListing objectListing = s3.listObjects(new ListObjectsRequest()
+				.withBucketName(bucket)
+				.withPrefix(prefix)
+				.withDelimiter("/"));
+		summaries.addAll(objectListing.getObjectSummaries());
+		while (objectListing.isTruncated()) {
+			objectListing = s3.listNextBatchOfObjects(objectListing);
+			summaries.addAll(objectListing.getObjectSummaries());
+		}
+		return summaries;
+	}
+
+	/**
+	 * This method uploads a file to the S3 output once, without retrying.
+	 * @param uploadFileName
+	 * @param ec2FileName
+	 */
+	public void putFile(String uploadFileName, String ec2FileName) {
+		File file = new File(uploadFileName);
+		if (ClientMain.OUTPUT_BUCKET == null){
+			this.s3.putObject(new PutObjectRequest(ServerMain.OUTPUT_BUCKET, ec2FileName, file));
+		}
+		else{
+			this.s3.putObject(new PutObjectRequest(ClientMain.OUTPUT_BUCKET, ec2FileName, file));
+		}
+	}
+
+	/**
+	 * @return the bucket the output of the job is written to
+	 */
+	private String getOutputBucket() {
+		return ClientMain.OUTPUT_BUCKET == null ? ServerMain.OUTPUT_BUCKET : ClientMain.OUTPUT_BUCKET;
+	}
+
+	/**
+	 * This method uploads the given bytes to the S3 output once, without retrying.
+	 * @param key
+	 * @param bytes
+	 * @param length number of bytes to upload
+	 */
+	public void putBytes(String key, byte[] bytes, int length) {
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(length);
+		this.s3.putObject(new PutObjectRequest(getOutputBucket(), key, new ByteArrayInputStream(bytes, 0, length), metadata));
+	}
+
+	/**
+	 * This method starts a multipart upload to the S3 output.
+	 * @param key
+	 * @return the id of the upload
+	 */
+	public String initiateMultipartUpload(String key) {
+		return this.s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(getOutputBucket(), key)).getUploadId();
+	}
+
+	/**
+	 * This method uploads one part of a multipart upload once, without retrying.
+	 * @param key
+	 * @param uploadId
+	 * @param partNumber number of the part, from 1
+	 * @param bytes
+	 * @param length number of bytes of the part
+	 * @return the tag of the part, needed to complete the upload
+	 */
+	public PartETag uploadPart(String key, String uploadId, int partNumber, byte[] bytes, int length) {
+		return this.s3.uploadPart(new UploadPartRequest()
+				.withBucketName(getOutputBucket())
+				.withKey(key)
+				.withUploadId(uploadId)
+				.withPartNumber(partNumber)
+				.withInputStream(new ByteArrayInputStream(bytes, 0, length))
+				.withPartSize(length)).getPartETag();
+	}
+
+	/**
+	 * This method completes a multipart upload from its parts.
+	 * @param key
+	 * @param uploadId
+	 * @param partETags tags of all the parts, in order
+	 */
+	public void completeMultipartUpload(String key, String uploadId, List<PartETag> partETags) {
+		this.s3.completeMultipartUpload(new CompleteMultipartUploadRequest(getOutputBucket(), key, uploadId, partETags));
+	}
+
+	/**
+	 * This method aborts a multipart upload, discarding the parts already uploaded.
+	 * @param key
+	 * @param uploadId
+	 */
+	public void abortMultipartUpload(String key, String uploadId) {
+		this.s3.abortMultipartUpload(new AbortMultipartUploadRequest(getOutputBucket(), key, uploadId));
 	}
 
 	/**
@@ -193,13 +367,7 @@ public class AWSManager {
 		boolean retry = false;
 		do{
 			try {
-				File file = new File(uploadFileName);
-				if (ClientMain.OUTPUT_BUCKET == null){
-					this.s3.putObject(new PutObjectRequest(ServerMain.OUTPUT_BUCKET, ec2FileName, file));
-				}
-				else{
-					this.s3.putObject(new PutObjectRequest(ClientMain.OUTPUT_BUCKET, ec2FileName, file));
-				}
+				putFile(uploadFileName, ec2FileName);
 			} 
 			catch (AmazonServiceException ase) {
 				System.out.println("Caught an AmazonServiceException, which " +
@@ -243,72 +411,39 @@ public class AWSManager {
 	}
 
 	/**
-	 * This method reads files from S3 output bucket, and merges the contents of the files from different slave nodes.
+	 * This method downloads the sorted partitions sent to this node by all the slave nodes from S3 output bucket.
 	 * @param clientId
-	 * @return
+	 * @param localDir
+	 * @return the local files of the partitions
 	 * @throws FileNotFoundException
 	 * @throws IOException
 	 */
-	public String readFilesfromS3andConcat(int clientId) throws FileNotFoundException, IOException {
+	public ArrayList<String> getPartitionFiles(int clientId, String localDir) throws FileNotFoundException, IOException {
 		short retryCount = 0;
 		short MAX_RETRY = 3;
 		boolean retry = false;
 		do{
 			try {
-				// creating a folder
-				FileUtils.createDir(ClientMain.SORT_PATH+"/"+String.valueOf(clientId));
-				ObjectListing objectListing = s3.listObjects(new ListObjectsRequest()
-						.withBucketName(ClientMain.OUTPUT_BUCKET)
-						.withPrefix(ClientMain.SORT_PATH+"/"+clientId + "/")
-						.withDelimiter("/"));
+				String partitionDir = ClientMain.SORT_PATH + "/" + clientId;
 				TreeSet<String> filenamesTree = new TreeSet<String>();
-				for (S3ObjectSummary objectSummary : objectListing.getObjectSummaries()) {
-					filenamesTree.add(objectSummary.getKey());			
+				for (S3ObjectSummary objectSummary : listAllObjects(ClientMain.OUTPUT_BUCKET, partitionDir + "/")) {
+					filenamesTree.add(objectSummary.getKey());
 				}
-				filenamesTree.remove(ClientMain.SORT_PATH+"/"+clientId+"/");
-				int counter = 0;
-				ArrayList<String> localfileNames = new ArrayList<>();
+				filenamesTree.remove(partitionDir + "/");
+				ArrayList<String> localFiles = new ArrayList<String>();
 				for (String filename : filenamesTree) {
 					S3Object s3object = this.s3.getObject(new GetObjectRequest(ClientMain.OUTPUT_BUCKET, filename));
+					String localFile = localDir + "/" + filename.substring(filename.lastIndexOf('/') + 1);
+					FileOutputStream out = new FileOutputStream(localFile);
 					try {
-						localfileNames.add(filename.split("/")[4]);
-						S3ObjectInputStream objectContent = s3object.getObjectContent();
-						IOUtils.copy(objectContent, new FileOutputStream(ClientMain.SORT_PATH+"/"+clientId+"/"+filename.split("/")[4]));
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-					counter += 1;
-				}
-				int x = 0;
-				while (x < ClientMain.N_INSTANCES)
-				{
-					if(x == 0){
-						FileMerger.merger(ClientMain.SORT_PATH + "/" + clientId+"/"+localfileNames.get(1),
-								ClientMain.SORT_PATH + "/" + clientId+"/"+localfileNames.get(0),
-								ClientMain.SORT_PATH + "/" + clientId+"/"+"finalPart-"+clientId+"-1");
-						x+=2;
-					}
-					else{
-						FileMerger.merger(ClientMain.SORT_PATH + "/" + clientId+"/"+localfileNames.get(x), 
-								ClientMain.SORT_PATH + "/" + clientId+"/"+"finalPart-"+clientId+"-"+(x-1),
-								ClientMain.SORT_PATH + "/" + clientId+"/"+"finalPart-"+clientId+"-"+x);
-						x+=1;
+						IOUtils.copy(s3object.getObjectContent(), out);
+					} finally {
+						out.close();
 					}
+					localFiles.add(localFile);
 				}
-				return ClientMain.SORT_PATH + "/" + clientId + "/" + "finalPart-" + clientId + "-" + (x-1);
+				return localFiles;
 			} 
-			catch (ArrayIndexOutOfBoundsException ae) {
-				ae.printStackTrace();
-				if (retryCount == MAX_RETRY){
-					retry = false;
-					System.out.println("Max Retry Limit achieved.Aborting Program: " + retryCount);
-				}
-				else{
-					retry = true;
-					retryCount += 1;
-					System.out.println("Retrying step. Retry Count: " + retryCount);
-				}
-			}
 			catch (AmazonServiceException ase) {
 				System.out.println("Caught an AmazonServiceException, which " +
 						"means your request made it " +
@@ -352,58 +487,151 @@ public class AWSManager {
 	}
 
 	/**
-	 * Mapper method to fetch all files
+	 * This method starts downloading the sorted partitions sent to this node by all the slave nodes from S3
+	 * output bucket in the background. The returned streams can be read while the partitions are still
+	 * arriving. A download that fails is retried from its start, writing the same bytes over the file.
 	 * @param clientId
-	 * @param mapper
+	 * @param localDir
+	 * @param localFiles filled with the local files of the partitions
+	 * @param pool runs the downloads, shut down by the caller, with shutdownNow to stop the downloads still running
+	 * @return streams over the partitions
+	 */
+	public List<InputStream> openPartitionStreams(int clientId, String localDir, List<String> localFiles,
+			ExecutorService pool) {
+		String partitionDir = ClientMain.SORT_PATH + "/" + clientId;
+		TreeSet<String> filenamesTree = new TreeSet<String>();
+		for (S3ObjectSummary objectSummary : listAllObjects(ClientMain.OUTPUT_BUCKET, partitionDir + "/")) {
+			filenamesTree.add(objectSummary.getKey());
+		}
+		filenamesTree.remove(partitionDir + "/");
+		List<InputStream> streams = new ArrayList<InputStream>();
+		for (final String filename : filenamesTree) {
+			final String localFile = localDir + "/" + filename.substring(filename.lastIndexOf('/') + 1);
+			final GrowingFileInputStream stream = new GrowingFileInputStream(localFile);
+			localFiles.add(localFile);
+			streams.add(stream);
+			pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					for (int retryCount = 0; ; retryCount++) {
+						try {
+							download(filename, localFile, stream);
+							stream.complete();
+							return null;
+						} catch (IOException | AmazonClientException e) {
+							if (retryCount == MAX_RETRY || Thread.currentThread().isInterrupted()) {
+								stream.fail(e instanceof IOException ? (IOException) e : new IOException(e));
+								return null;
+							}
+							SortClient.LOG.info("Downloading {} failed: {}. Retry Count: {}", filename, e.getMessage(),
+									retryCount + 1);
+							Thread.sleep(1000L << retryCount);
+						}
+					}
+				}
+			});
+		}
+		return streams;
+	}
+
+	/**
+	 * This method downloads an object of the S3 output bucket to a local file, telling the given stream
+	 * about every block written. The download stops if the thread is interrupted.
+	 * @param key
+	 * @param localFile
+	 * @param stream may be null
+	 * @throws IOException
 	 */
-	public void mapAllFiles(int clientId, Mapper mapper) {
-		Context context = new Context();
+	private void download(String key, String localFile, GrowingFileInputStream stream) throws IOException {
+		S3Object s3object = this.s3.getObject(new GetObjectRequest(ClientMain.OUTPUT_BUCKET, key));
+		S3ObjectInputStream in = s3object.getObjectContent();
+		RandomAccessFile out = new RandomAccessFile(localFile, "rw");
+		try {
+			byte[] buffer = new byte[256 * 1024];
+			long position = 0;
+			int n;
+			while ((n = in.read(buffer)) >= 0) {
+				if (Thread.currentThread().isInterrupted()) {
+					// closing would read the rest of the object
+					in.abort();
+					throw new InterruptedIOException("Interrupted while downloading " + key);
+				}
+				out.write(buffer, 0, n);
+				position += n;
+				if (stream != null) {
+					stream.written(position);
+				}
+			}
+			out.setLength(position);
+		} finally {
+			out.close();
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns a fetcher of the partitions that the nodes back up to S3 with direct shuffle. The node that
+	 * wrote a partition may still be uploading it, a missing partition is waited for.
+	 * @return
+	 */
+	public PartitionFetcher getPartitionFetcher() {
+		return new PartitionFetcher() {
+			@Override
+			public void fetch(int partition, int node, String localFile, GrowingFileInputStream stream)
+					throws IOException {
+				String key = ClientMain.SORT_PATH + "/" + partition + "/" + node;
+				long deadline = System.currentTimeMillis() + BACKUP_WAIT;
+				for (int retryCount = 0; ; retryCount++) {
+					try {
+						download(key, localFile, stream);
+						return;
+					} catch (IOException | AmazonClientException e) {
+						if (System.currentTimeMillis() > deadline) {
+							throw new IOException("Backup of partition " + partition + " of node " + node
+									+ " not available", e);
+						}
+						SortClient.LOG.info("Fetching {} failed: {}. Retry Count: {}", key, e.getMessage(), retryCount + 1);
+						try {
+							Thread.sleep(Math.min(30000, 1000L << Math.min(retryCount, 5)));
+						} catch (InterruptedException ie) {
+							throw new IOException("Interrupted while fetching " + key, ie);
+						}
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * This method lists the input files in S3, cuts them into splits and returns the splits to be mapped
+	 * by this node.
+	 * @param clientId
+	 * @return
+	 */
+	public ArrayList<InputSplit> getInputFiles(int clientId) {
+		ArrayList<InputSplit> inputSplits = new ArrayList<InputSplit>();
 		short retryCount = 0;
 		boolean retry = false;
 		/* (Run by Client) */
 		do{
 			try {
 				// fetching filenames depending on count
-				ObjectListing objectListing = s3.listObjects(new ListObjectsRequest()
-						.withBucketName(ClientMain.INPUT_BUCKET)
-						.withPrefix(ClientMain.INPUT_FOLDER + "/")
-						.withDelimiter("/"));
-				TreeMap<Long, String> filenamesMap = new TreeMap<Long, String>();
-				for (S3ObjectSummary objectSummary : objectListing.getObjectSummaries()) {
-					filenamesMap.put(objectSummary.getSize(), objectSummary.getKey());			
-				}
-				TreeSet<String> filenamesTree = new TreeSet<String>(filenamesMap.values());
-				filenamesTree.remove(ClientMain.INPUT_FOLDER + "/");
-				// save all filenames to a list
-				ArrayList<String> fileList = new ArrayList<String>();
-				fileList.addAll(filenamesTree);
-				List<List<String>> listPartitions = CollectionUtils.partition(fileList, ClientMain.N_INSTANCES);
-				String filenames = "";
-				for (List<String> elementList : listPartitions){
-					if (elementList.size() > clientId){
-                        filenames = StringUtils.join(new String[]{filenames, elementList.get(clientId)}, ",");
-					}
+				TreeMap<String, Long> filesMap = new TreeMap<String, Long>();
+				for (S3ObjectSummary objectSummary : listAllObjects(ClientMain.INPUT_BUCKET, ClientMain.INPUT_FOLDER + "/")) {
+					filesMap.put(objectSummary.getKey(), objectSummary.getSize());
 				}
-				filenames = filenames.substring(1);
-				// fetching only part of actual data
-				String[] filenamesList = filenames.split(",");
-				int counter = 0;
-				for (String filename : filenamesList) {
-					String currentFile = filename.substring(filename.lastIndexOf('/') + 1).split("\\.")[0];
-					ClientMain.CURRENT_FILE = currentFile;
-					S3Object s3object = this.s3.getObject(new GetObjectRequest(ClientMain.INPUT_BUCKET, filename));
-					BufferedReader reader;
-					try {
-						reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(s3object.getObjectContent())));
-						String line;
-						while ((line = reader.readLine()) != null) {
-							mapper.map(null, line, context);
-						}
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-					counter += 1;
+				filesMap.remove(ClientMain.INPUT_FOLDER + "/");
+				// cut large uncompressed files into byte ranges
+				List<InputSplit> splits = SplitPlanner.plan(new ArrayList<String>(filesMap.keySet()),
+						new ArrayList<Long>(filesMap.values()), Context.splitSize);
+				// give every node a near-equal number of bytes
+				ArrayList<Long> splitSizes = new ArrayList<Long>();
+				for (InputSplit split : splits) {
+					splitSizes.add(split.getLength());
 				}
+				inputSplits.clear();
+				inputSplits.addAll(CollectionUtils.balance(splits, splitSizes, ClientMain.N_INSTANCES).get(clientId));
+				retry = false;
 			}
 			catch (AmazonServiceException ase) {
 				System.out.println("Caught an AmazonServiceException, which " +
@@ -443,32 +671,46 @@ public class AWSManager {
 				}
 			}
 		}
-		while(retry);	
+		while(retry);
+		return inputSplits;
 	}
 
 	/**
-	 * Reducer method that performs the reduce operation on sorted output
-	 * @param clientNum
-	 * @param reducer
-	 * @throws FileNotFoundException
+	 * Returns a fetcher that reads byte ranges of the input files from S3 with ranged GETs.
+	 * @return
 	 */
-	public void reduceKey(int clientNum, Reducer reducer) throws FileNotFoundException {
-		Context context = new Context();
-		File file = new File(ClientMain.REDUCE_PATH);
-		File[] files = file.listFiles();
-		Arrays.sort(files, new Comparator<File>(){
+	public SplitFetcher getSplitFetcher() {
+		return new SplitFetcher() {
 			@Override
-			public int compare(File f1, File f2) {
-				return f1.getName().compareToIgnoreCase(f2.getName());
-			}			
-		});
-		ClientMain.CURRENT_FILE = "abs-final-output-" + ClientMain.CLIENT_NUM;
-		for (File f: files){
-			if (f.getName().startsWith("" + clientNum)){
-				//+f.getName().split("_")[1];
-				BufferedReaderIterable b = new BufferedReaderIterable(f);
-				reducer.reduce(f.getName().split("_")[1], b, context);
+			public InputStream open(String key, long start, long end) throws IOException {
+				if (end <= start) {
+					return new ByteArrayInputStream(new byte[0]);
+				}
+				GetObjectRequest request = new GetObjectRequest(ClientMain.INPUT_BUCKET, key).withRange(start, end - 1);
+				final S3ObjectInputStream objectContent = s3.getObject(request).getObjectContent();
+				return new FilterInputStream(objectContent) {
+					@Override
+					public void close() throws IOException {
+						// do not drain the rest of the object
+						objectContent.abort();
+					}
+				};
 			}
+		};
+	}
+
+	/**
+	 * Reducer method that performs the reduce operation on sorted output. The records are streamed,
+	 * handing the values of every key to the reducer as they are read.
+	 * @param source records of this node, sorted by key
+	 * @param reducer
+	 * @param context
+	 * @throws IOException
+	 */
+	public void reduceKey(RecordSource source, Reducer reducer, Context context) throws IOException {
+		GroupingIterator groups = new GroupingIterator(source);
+		while (groups.nextKey()) {
+			reducer.reduce(groups, context);
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+package com.aws;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import com.amazonaws.AmazonClientException;
+import com.net.SortClient;
+
+/**
+ * Uploads files to S3 on a pool of background threads, so that the caller can go on writing the next file.
+ * At most a bounded number of uploads wait or run at a time, submitting more blocks the caller.
+ * Every upload is retried with exponential backoff on its own thread.
+ */
+public class AsyncUploader {
+	private static final int MAX_RETRY = 3;
+	private static final long BASE_BACKOFF = 500;
+
+	private AWSManager AWSConnect;
+	private ExecutorService pool;
+	private Semaphore slots;
+	private List<Future<Void>> uploads = new ArrayList<Future<Void>>();
+	private Random random = new Random();
+
+	/**
+	 * @param AWSConnect
+	 * @param threads number of concurrent uploads
+	 * @param maxPending number of uploads that may be submitted and not finished
+	 */
+	public AsyncUploader(AWSManager AWSConnect, int threads, int maxPending) {
+		this.AWSConnect = AWSConnect;
+		this.pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		this.slots = new Semaphore(Math.max(1, maxPending));
+	}
+
+	/**
+	 * Method to upload a file in the background, waiting first if too many uploads are pending.
+	 * @param uploadFileName
+	 * @param key
+	 * @throws InterruptedException
+	 */
+	public void submit(final String uploadFileName, final String key) throws InterruptedException {
+		slots.acquire();
+		try {
+			uploads.add(pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					try {
+						upload(uploadFileName, key);
+					} finally {
+						slots.release();
+					}
+					return null;
+				}
+			}));
+		} catch (RuntimeException e) {
+			slots.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Method to upload a file, retrying with exponential backoff and jitter.
+	 * @param uploadFileName
+	 * @param key
+	 * @throws InterruptedException
+	 */
+	private void upload(String uploadFileName, String key) throws InterruptedException {
+		for (int retryCount = 0; ; retryCount++) {
+			try {
+				AWSConnect.putFile(uploadFileName, key);
+				return;
+			} catch (AmazonClientException e) {
+				if (retryCount == MAX_RETRY) {
+					throw e;
+				}
+				long backoff = (BASE_BACKOFF << retryCount) + nextJitter();
+				SortClient.LOG.info("Uploading {} failed: {}. Retry Count: {}, retrying in {} ms", uploadFileName,
+						e.getMessage(), retryCount + 1, backoff);
+				Thread.sleep(backoff);
+			}
+		}
+	}
+
+	private synchronized long nextJitter() {
+		return random.nextInt((int) BASE_BACKOFF);
+	}
+
+	/**
+	 * Method to wait for all the submitted uploads and stop the upload threads.
+	 * @throws IOException if any upload failed after all its retries
+	 * @throws InterruptedException
+	 */
+	public void awaitAll() throws IOException, InterruptedException {
+		try {
+			Throwable failure = null;
+			int failed = 0;
+			for (Future<Void> upload : uploads) {
+				try {
+					upload.get();
+				} catch (ExecutionException e) {
+					failed++;
+					if (failure == null) {
+						failure = e.getCause();
+					}
+				}
+			}
+			if (failure != null) {
+				throw new IOException(failed + " of " + uploads.size() + " uploads failed", failure);
+			}
+		} finally {
+			uploads.clear();
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Method to count the submitted uploads that have not finished yet.
+	 * @return the number of uploads waiting or running
+	 */
+	public int countPending() {
+		int pending = 0;
+		for (Future<Void> upload : uploads) {
+			if (!upload.isDone()) {
+				pending++;
+			}
+		}
+		return pending;
+	}
+
+	/**
+	 * Method to count the uploads submitted since the last awaitAll.
+	 * @return the number of uploads submitted
+	 */
+	public int countSubmitted() {
+		return uploads.size();
+	}
+
+	/**
+	 * Method to stop the upload threads, abandoning the uploads still pending.
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+}
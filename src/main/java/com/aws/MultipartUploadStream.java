@@ -0,0 +1,264 @@
+package com.aws;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.model.PartETag;
+import com.net.SortClient;
+
+/**
+ * Output stream that uploads what is written to it to an S3 object while it is being written. Every full
+ * buffer is uploaded as a part of a multipart upload on a pool of background threads, so the upload is
+ * nearly done when the stream is closed. Outputs smaller than one part are uploaded with a single put.
+ * The upload threads and buffers are shared with the other streams of the node through an UploadPool.
+ */
+public class MultipartUploadStream extends OutputStream {
+	// Smallest part S3 accepts, except for the last part
+	public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+	private static final int MAX_RETRY = 3;
+	private static final long BASE_BACKOFF = 500;
+
+	private AWSManager AWSConnect;
+	private String key;
+	private UploadPool pool;
+	private byte[] buffer;
+	private int count = 0;
+	private String uploadId;
+	private List<Future<PartETag>> parts = new ArrayList<Future<PartETag>>();
+	private Random random = new Random();
+	private boolean closed = false;
+	// A failed write leaves the output incomplete, close aborts the upload instead of completing it
+	private IOException failure;
+
+	/**
+	 * @param AWSConnect
+	 * @param key key of the object in the output bucket
+	 * @param pool upload threads and buffers, the part size is the size of its buffers, at least MIN_PART_SIZE
+	 */
+	public MultipartUploadStream(AWSManager AWSConnect, String key, UploadPool pool) {
+		if (pool.getPartSize() < MIN_PART_SIZE) {
+			throw new IllegalArgumentException("Part size must be at least " + MIN_PART_SIZE + " bytes: "
+					+ pool.getPartSize());
+		}
+		this.AWSConnect = AWSConnect;
+		this.key = key;
+		this.pool = pool;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (buffer == null || count == buffer.length) {
+			nextBuffer();
+		}
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (buffer == null || count == buffer.length) {
+				nextBuffer();
+			}
+			int n = Math.min(len, buffer.length - count);
+			System.arraycopy(b, off, buffer, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Method to upload the full buffer, if any, and take an empty one, waiting for an upload to finish if
+	 * all the buffers are in use.
+	 * @throws IOException
+	 */
+	private void nextBuffer() throws IOException {
+		if (closed) {
+			throw new IOException("Stream of " + key + " is closed");
+		}
+		try {
+			if (buffer != null) {
+				submitPart();
+			}
+			buffer = pool.takeBuffer();
+		} catch (IOException e) {
+			failure = e;
+			throw e;
+		} catch (InterruptedException e) {
+			failure = new IOException("Interrupted while waiting for a part upload", e);
+			throw failure;
+		}
+		count = 0;
+	}
+
+	/**
+	 * Method to upload the current buffer as the next part, starting the multipart upload with the first part.
+	 * @throws IOException
+	 */
+	private void submitPart() throws IOException {
+		if (uploadId == null) {
+			try {
+				uploadId = AWSConnect.initiateMultipartUpload(key);
+			} catch (AmazonClientException e) {
+				releaseBuffer();
+				throw new IOException("Cannot start the upload of " + key, e);
+			}
+		}
+		final byte[] part = buffer;
+		final int length = count;
+		final int partNumber = parts.size() + 1;
+		buffer = null;
+		parts.add(pool.submit(new Callable<PartETag>() {
+			@Override
+			public PartETag call() throws Exception {
+				try {
+					return uploadPart(partNumber, part, length);
+				} finally {
+					pool.releaseBuffer(part);
+				}
+			}
+		}));
+	}
+
+	/**
+	 * Method to upload a part, retrying with exponential backoff and jitter.
+	 * @param partNumber
+	 * @param part
+	 * @param length
+	 * @return
+	 * @throws InterruptedException
+	 */
+	private PartETag uploadPart(int partNumber, byte[] part, int length) throws InterruptedException {
+		for (int retryCount = 0; ; retryCount++) {
+			try {
+				return AWSConnect.uploadPart(key, uploadId, partNumber, part, length);
+			} catch (AmazonClientException e) {
+				if (retryCount == MAX_RETRY) {
+					throw e;
+				}
+				long backoff = (BASE_BACKOFF << retryCount) + nextJitter();
+				SortClient.LOG.info("Uploading part {} of {} failed: {}. Retry Count: {}, retrying in {} ms", partNumber,
+						key, e.getMessage(), retryCount + 1, backoff);
+				Thread.sleep(backoff);
+			}
+		}
+	}
+
+	private synchronized long nextJitter() {
+		return random.nextInt((int) BASE_BACKOFF);
+	}
+
+	/**
+	 * Uploads the last part and completes the upload, or puts the object in one request if it fits in one
+	 * part. The upload is aborted if any part or an earlier write failed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		if (failure != null) {
+			abort();
+			throw new IOException("Upload of " + key + " failed", failure);
+		}
+		closed = true;
+		try {
+			if (uploadId == null) {
+				putObject();
+				return;
+			}
+			if (count > 0) {
+				submitPart();
+			}
+			List<PartETag> etags = new ArrayList<PartETag>();
+			try {
+				for (Future<PartETag> part : parts) {
+					etags.add(part.get());
+				}
+				AWSConnect.completeMultipartUpload(key, uploadId, etags);
+			} catch (ExecutionException | InterruptedException | AmazonClientException e) {
+				abortUpload();
+				throw new IOException("Upload of " + key + " failed", e instanceof ExecutionException ? e.getCause() : e);
+			}
+		} finally {
+			releaseBuffer();
+		}
+	}
+
+	/**
+	 * Method to give the buffer being filled, if any, back to the pool.
+	 */
+	private void releaseBuffer() {
+		if (buffer != null) {
+			pool.releaseBuffer(buffer);
+			buffer = null;
+		}
+	}
+
+	/**
+	 * Method to upload an output smaller than one part with a single put, retrying like the parts.
+	 * @throws IOException
+	 */
+	private void putObject() throws IOException {
+		byte[] bytes = buffer == null ? new byte[0] : buffer;
+		for (int retryCount = 0; ; retryCount++) {
+			try {
+				AWSConnect.putBytes(key, bytes, count);
+				return;
+			} catch (AmazonClientException e) {
+				if (retryCount == MAX_RETRY) {
+					throw new IOException("Upload of " + key + " failed", e);
+				}
+				try {
+					Thread.sleep((BASE_BACKOFF << retryCount) + nextJitter());
+				} catch (InterruptedException ie) {
+					throw new IOException("Interrupted while uploading " + key, ie);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discards what was written to the stream, nothing is left in S3. Used instead of close when the output
+	 * is incomplete, because the task writing it failed.
+	 */
+	public void abort() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		releaseBuffer();
+		if (uploadId != null) {
+			abortUpload();
+		}
+	}
+
+	/**
+	 * Method to abort the multipart upload so that S3 discards the parts already uploaded. The parts still
+	 * being uploaded are waited for first, a part uploaded after the abort would be kept.
+	 */
+	private void abortUpload() {
+		for (Future<PartETag> part : parts) {
+			try {
+				part.get();
+			} catch (ExecutionException e) {
+				// the upload is discarded anyway
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		try {
+			AWSConnect.abortMultipartUpload(key, uploadId);
+		} catch (AmazonClientException e) {
+			SortClient.LOG.info("Aborting the upload of {} failed: {}", key, e.getMessage());
+		}
+	}
+}
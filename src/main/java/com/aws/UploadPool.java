@@ -0,0 +1,86 @@
+package com.aws;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Upload threads and part buffers shared by all the output streams of a node, so that the threads and the
+ * memory used for uploads do not grow with the number of output files written at the same time. A stream
+ * waits for a buffer once all of them are being filled or uploaded.
+ */
+public class UploadPool {
+	private ExecutorService pool;
+	// Buffers not being filled or uploaded, more are allocated up to the limit
+	private BlockingQueue<byte[]> freeBuffers;
+	private int allocatedBuffers = 0;
+	private int maxBuffers;
+	private int partSize;
+
+	/**
+	 * @param threads number of parts uploaded at the same time
+	 * @param buffers number of part buffers, being filled or uploaded, held in memory
+	 * @param partSize size in bytes of every buffer
+	 */
+	public UploadPool(int threads, int buffers, int partSize) {
+		this.pool = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				// the pool lives as long as the node, it must not keep it from exiting
+				Thread thread = Executors.defaultThreadFactory().newThread(r);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.maxBuffers = Math.max(1, buffers);
+		this.freeBuffers = new ArrayBlockingQueue<byte[]>(maxBuffers);
+		this.partSize = partSize;
+	}
+
+	/**
+	 * @return size in bytes of the buffers
+	 */
+	public int getPartSize() {
+		return partSize;
+	}
+
+	/**
+	 * Method to take an empty buffer, waiting for one to be released if all the buffers are in use.
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public byte[] takeBuffer() throws InterruptedException {
+		byte[] buffer = freeBuffers.poll();
+		if (buffer != null) {
+			return buffer;
+		}
+		synchronized (this) {
+			if (allocatedBuffers < maxBuffers) {
+				allocatedBuffers++;
+				return new byte[partSize];
+			}
+		}
+		return freeBuffers.take();
+	}
+
+	/**
+	 * Method to give back a buffer taken from this pool.
+	 * @param buffer
+	 */
+	public void releaseBuffer(byte[] buffer) {
+		freeBuffers.add(buffer);
+	}
+
+	/**
+	 * Method to run an upload on the upload threads.
+	 * @param upload
+	 * @return
+	 */
+	public <T> Future<T> submit(Callable<T> upload) {
+		return pool.submit(upload);
+	}
+}
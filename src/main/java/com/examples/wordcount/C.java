@@ -0,0 +1,22 @@
+package com.examples.wordcount;
+
+import com.main.Context;
+import com.reduce.Combiner;
+
+/**
+ * Example combiner class
+ */
+public class C extends Combiner {
+
+	/**
+	 * Custom combine method
+	 */
+	@Override
+	public void combine(String key, Iterable<String> value, Context context) {
+		int count = 0;
+		for(String s : value) {
+			count = count + Integer.parseInt(s);
+		}
+		context.write(key, String.valueOf(count));
+	}
+}
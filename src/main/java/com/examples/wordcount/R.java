@@ -15,7 +15,7 @@ public class R extends Reducer{
 	public void reduce(String key, Iterable<String> value, Context context) {	
 		int count = 0;	
 		for(String s : value) {
-			count = count + 1;
+			count = count + Integer.parseInt(s);
 		}		
 		context.write(key, String.valueOf(count));		
 	}
@@ -15,6 +15,7 @@ public class WordCount {
 
 		Context context = new Context();
 		context.setMapperClass(M.class);
+		context.setCombinerClass(C.class);
 		context.setReducerClass(R.class);
 		context.setInputPath(args[0]);
 		context.setOutputPath(args[1]);
@@ -4,10 +4,12 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.UUID;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.net.ShuffleServer;
 import com.net.SortClient;
 
 /**
@@ -21,6 +23,7 @@ public class ClientMain {
 	public static String SERVER_ADDRESS;
 	public static int SERVER_PORT;
 	public static String LOGS_PATH;
+	public static int SHUFFLE_PORT;
 
 	// Initialized by Server
 	public static String JOB_ID;
@@ -31,9 +34,9 @@ public class ClientMain {
 	public static String MAP_PATH;
 	public static String SORT_PATH;
 	public static String LOCAL_OUTPUT_PATH;
-	public static String REDUCE_PATH;
+	// Shuffle server address (host:port) of every node, by client number
+	public static HashMap<Integer, String> PEER_ADDRESSES = new HashMap<Integer, String>();
 
-	public static String CURRENT_FILE;
 	public static String INPUT_BUCKET;
 	public static String INPUT_FOLDER;
 	public static String OUTPUT_BUCKET;
@@ -97,7 +100,20 @@ public class ClientMain {
 		}
 		ClientMain.setParams(args);
 		System.setProperty("logfile.name", LOGS_PATH + "/" + "client_"+ CLIENT_ID + ".log");		
-		SortClient.start();
+		if (Context.directShuffle) {
+			try {
+				SHUFFLE_PORT = ShuffleServer.start(Context.shufflePort);
+			} catch (Exception e) {
+				// Partitions are exchanged through S3 instead
+				e.printStackTrace();
+				SHUFFLE_PORT = 0;
+			}
+		}
+		try {
+			SortClient.start();
+		} finally {
+			ShuffleServer.stop();
+		}
 	}
 
 	public static void main(String[] args) throws NumberFormatException, IOException {
@@ -1,20 +1,83 @@
 package com.main;
 
 import java.io.IOException;
+import java.util.Comparator;
 
+import com.aws.AWSManager;
+import com.aws.MultipartUploadStream;
+import com.aws.UploadPool;
 import com.map.Mapper;
+import com.net.SortClient;
+import com.reduce.Combiner;
 import com.reduce.Reducer;
-import com.utils.FileUtils;
+import com.sort.HashPartitioner;
+import com.sort.SortBuffer;
+import com.utils.BlockCodec;
+import com.utils.GenericFactory;
+import com.utils.OutputCollector;
+import com.utils.RecordSink;
+import com.utils.TextRecordWriter;
 
 /**
  * Class for setting the Mapper class, Reducer class, Input path and Output path
  */
 public class Context {
 
+	// Shuffle modes
+	public static final String SORT_SHUFFLE = "SORT";
+	public static final String HASH_SHUFFLE = "HASH";
+
 	public static Class<? extends Mapper> mapper;
+	public static Class<? extends Combiner> combiner;
 	public static Class<? extends Reducer> reducer;
 	public static String inputPath;
 	public static String outputPath;
+	public static long sortBufferSize = 100 * 1024 * 1024;
+	public static String shuffleMode = SORT_SHUFFLE;
+	public static int oversampling = 8;
+	public static boolean directShuffle = true;
+	public static int shufflePort = 0;
+	public static boolean shuffleBackup = false;
+	public static int uploadThreads = 4;
+	public static double hotKeyThreshold = 1.0;
+	public static int mapThreads = Runtime.getRuntime().availableProcessors();
+	public static int reduceThreads = Runtime.getRuntime().availableProcessors();
+	public static boolean pipelinedReduce = false;
+	public static long splitSize = 128 * 1024 * 1024;
+	public static int prefetchDepth = 2;
+	public static long prefetchBudget = 1024L * 1024 * 1024;
+	public static BlockCodec intermediateCodec;
+	public static int uploadPartSize = 8 * 1024 * 1024;
+	// 0 for one buffer per reduce thread and per upload thread
+	public static int uploadBuffers = 0;
+	public static Comparator<String> sortComparator;
+	public static Comparator<String> groupingComparator;
+	// Intermediate records are binary, only the final output of the job is text
+	private OutputCollector collector = new OutputCollector();
+	// The final output is streamed to S3 as it is written
+	private OutputCollector outputCollector = new OutputCollector(true) {
+		@Override
+		protected RecordSink open(String filePath) throws IOException {
+			if (AWSConnect == null) {
+				AWSConnect = new AWSManager();
+			}
+			final MultipartUploadStream stream = new MultipartUploadStream(AWSConnect, filePath, getUploadPool());
+			return new TextRecordWriter(stream) {
+				@Override
+				public void abort() {
+					stream.abort();
+				}
+			};
+		}
+	};
+	// Upload threads and buffers of all the output files of the node
+	private static UploadPool uploadPool;
+	private AWSManager AWSConnect;
+	// First failure to write the output, the output is discarded when the context is closed
+	private IOException writeFailure;
+	private SortBuffer sortBuffer;
+	private String outputFile;
+	private String currentFile;
 
 	/**
 	 * sets the mapper class
@@ -24,6 +87,14 @@ public class Context {
 		Context.mapper = mapper;
 	}
 
+	/**
+	 * Sets the combiner class. Combiner is optional and runs over the map output before it is uploaded.
+	 * @param combiner
+	 */
+	public void setCombinerClass(Class<? extends Combiner> combiner) {
+		Context.combiner = combiner;
+	}
+
 	/**
 	 * Sets the reducer class
 	 * @param reducer
@@ -48,14 +119,313 @@ public class Context {
 		Context.outputPath = outputPath;
 	}
 
+	/**
+	 * Sets the shuffle mode of the job. SORT_SHUFFLE (default) range partitions the map output with a
+	 * distributed sample sort, so that the job output is globally ordered. HASH_SHUFFLE hash partitions
+	 * the map output directly into one file per reducer and skips sampling, which is enough when only the
+	 * values of each key need to be grouped.
+	 * @param shuffleMode
+	 */
+	public void setShuffleMode(String shuffleMode) {
+		if (!SORT_SHUFFLE.equals(shuffleMode) && !HASH_SHUFFLE.equals(shuffleMode)) {
+			throw new IllegalArgumentException("Unknown shuffle mode: " + shuffleMode);
+		}
+		if (HASH_SHUFFLE.equals(shuffleMode) && Context.groupingComparator != null) {
+			throw new IllegalArgumentException("A grouping comparator needs " + SORT_SHUFFLE + " shuffle mode");
+		}
+		Context.shuffleMode = shuffleMode;
+	}
+
+	/**
+	 * Sets the order keys are sorted in, in place of the default case insensitive order. Map output, merges,
+	 * pivots and the order of the job output all follow it. Every node of a job must use the same comparator.
+	 * @param sortComparator
+	 */
+	public void setSortComparator(Comparator<String> sortComparator) {
+		Context.sortComparator = sortComparator;
+	}
+
+	/**
+	 * Sets the comparator that decides which keys are reduced together, for a secondary sort. Keys comparing
+	 * equal must be next to each other in the sort order, as when the grouping comparator compares a prefix
+	 * of composite keys that the sort comparator compares in full. The reducer is called once per group,
+	 * with the first key of the group, and receives the values in the sort order of their keys, streamed from
+	 * disk. Needs SORT_SHUFFLE, since hash partitioning cannot keep a group on one node.
+	 * @param groupingComparator
+	 */
+	public void setGroupingComparator(Comparator<String> groupingComparator) {
+		if (groupingComparator != null && HASH_SHUFFLE.equals(Context.shuffleMode)) {
+			throw new IllegalArgumentException("A grouping comparator needs " + SORT_SHUFFLE + " shuffle mode");
+		}
+		Context.groupingComparator = groupingComparator;
+	}
+
+	/**
+	 * Sets the number of samples every node takes per partition. More samples give pivots closer to the
+	 * true key distribution at the cost of a larger sample exchange.
+	 * @param oversampling
+	 */
+	public void setOversampling(int oversampling) {
+		Context.oversampling = oversampling;
+	}
+
+	/**
+	 * Sets how large a key must be, as a multiple of an even partition, to be treated as a hot key.
+	 * A hot key is given partitions of its own, and is spread over several reducers when a combiner is set.
+	 * @param hotKeyThreshold
+	 */
+	public void setHotKeyThreshold(double hotKeyThreshold) {
+		Context.hotKeyThreshold = hotKeyThreshold;
+	}
+
+	/**
+	 * Sets whether partitions are pulled directly from the other nodes instead of going through S3.
+	 * S3 is still used if any node cannot start its shuffle server, and, with shuffle backup, for a
+	 * partition that a node cannot serve.
+	 * @param directShuffle
+	 */
+	public void setDirectShuffle(boolean directShuffle) {
+		Context.directShuffle = directShuffle;
+	}
+
+	/**
+	 * Sets whether the partitions pulled directly from the other nodes are also uploaded to S3 in the
+	 * background, so that a node can fetch a partition from S3 when the node that wrote it cannot serve it.
+	 * The backup is best effort: no node waits for it, so a partition whose upload has not finished yet is
+	 * only found once it has. Without backup, such a failure fails the job. Off by default.
+	 * @param shuffleBackup
+	 */
+	public void setShuffleBackup(boolean shuffleBackup) {
+		Context.shuffleBackup = shuffleBackup;
+	}
+
+	/**
+	 * Sets the port of the shuffle server of every node. The default, 0, picks any free port.
+	 * @param shufflePort
+	 */
+	public void setShufflePort(int shufflePort) {
+		Context.shufflePort = shufflePort;
+	}
+
+	/**
+	 * Sets the number of files uploaded to S3 at the same time while the next files are written
+	 * @param uploadThreads
+	 */
+	public void setUploadThreads(int uploadThreads) {
+		Context.uploadThreads = uploadThreads;
+	}
+
+	/**
+	 * Sets the size in bytes of the parts the output of the job is uploaded in while it is written. The
+	 * output files of a node share a budget of uploadBuffers parts in memory.
+	 * @param uploadPartSize at least 5 MB, the smallest part S3 accepts
+	 */
+	public void setUploadPartSize(int uploadPartSize) {
+		if (uploadPartSize < MultipartUploadStream.MIN_PART_SIZE) {
+			throw new IllegalArgumentException("Upload part size must be at least "
+					+ MultipartUploadStream.MIN_PART_SIZE + " bytes: " + uploadPartSize);
+		}
+		Context.uploadPartSize = uploadPartSize;
+	}
+
+	/**
+	 * Sets the number of parts of the output of the job, being written or uploaded, that a node holds in
+	 * memory, shared by all its output files. Writing waits for an upload once they are all in use.
+	 * @param uploadBuffers 0 for one part per reduce thread and per upload thread
+	 */
+	public void setUploadBuffers(int uploadBuffers) {
+		Context.uploadBuffers = uploadBuffers;
+	}
+
+	/**
+	 * Returns the upload threads and buffers shared by the output files of the node, creating them on first use
+	 * @return
+	 */
+	private static synchronized UploadPool getUploadPool() {
+		if (uploadPool == null) {
+			int buffers = uploadBuffers > 0 ? uploadBuffers : Math.max(1, uploadThreads) + Math.max(1, reduceThreads);
+			uploadPool = new UploadPool(uploadThreads, buffers, uploadPartSize);
+		}
+		return uploadPool;
+	}
+
+	/**
+	 * Sets the number of threads mapping the input files of a node in parallel
+	 * @param mapThreads
+	 */
+	public void setMapThreads(int mapThreads) {
+		Context.mapThreads = mapThreads;
+	}
+
+	/**
+	 * Sets the number of threads reducing the partition of a node in parallel. The partition is split at
+	 * key boundaries into one key range per thread, and every range is written to its own output file.
+	 * @param reduceThreads
+	 */
+	public void setReduceThreads(int reduceThreads) {
+		Context.reduceThreads = reduceThreads;
+	}
+
+	/**
+	 * Sets whether a node reduces its partition while it is still being fetched from the other nodes,
+	 * instead of after it has been fetched and merged. A pipelined reduce overlaps with the tail of the
+	 * shuffle, but runs on a single thread; it suits jobs waiting on slow senders more than jobs with
+	 * CPU-heavy reducers. Nodes holding part of a spread hot key always reduce after the merge.
+	 * @param pipelinedReduce
+	 */
+	public void setPipelinedReduce(boolean pipelinedReduce) {
+		Context.pipelinedReduce = pipelinedReduce;
+	}
+
+	/**
+	 * Sets the size in bytes of the byte ranges that large uncompressed input files are cut into
+	 * @param splitSize
+	 */
+	public void setSplitSize(long splitSize) {
+		Context.splitSize = splitSize;
+	}
+
+	/**
+	 * Sets the number of input splits downloaded ahead of the map threads
+	 * @param prefetchDepth
+	 */
+	public void setPrefetchDepth(int prefetchDepth) {
+		Context.prefetchDepth = prefetchDepth;
+	}
+
+	/**
+	 * Sets the number of bytes of input splits that may be held on local disk ahead of the map threads
+	 * @param prefetchBudget
+	 */
+	public void setPrefetchBudget(long prefetchBudget) {
+		Context.prefetchBudget = prefetchBudget;
+	}
+
+	/**
+	 * Sets the codec that compresses intermediate files (map output, sorted runs and partitions) in blocks,
+	 * for example new DeflateCodec(Deflater.BEST_SPEED). The default, null, leaves them uncompressed.
+	 * Every node of a job must use the same codec.
+	 * @param intermediateCodec
+	 */
+	public void setIntermediateCodec(BlockCodec intermediateCodec) {
+		Context.intermediateCodec = intermediateCodec;
+	}
+
+	/**
+	 * Sets the size in bytes of the in-memory buffer that sorts map output before spilling it to disk.
+	 * Every map thread has its own buffer.
+	 * @param sortBufferSize
+	 */
+	public void setSortBufferSize(long sortBufferSize) {
+		Context.sortBufferSize = sortBufferSize;
+	}
+
+	/**
+	 * Sets the name of the file being processed, which names the output files of this context
+	 * @param currentFile
+	 */
+	public void setCurrentFile(String currentFile) {
+		this.currentFile = currentFile;
+	}
+
+	/**
+	 * Method to redirect the output of this context to the given file
+	 * @param outputFile
+	 */
+	public void setOutputFile(String outputFile) {
+		this.outputFile = outputFile;
+	}
+
 	/**
 	 * Method to write the output from mapper/reducer to context
 	 * @param key
 	 * @param value
 	 */
 	public void write(String key, String value) {
-		String filePath = ClientMain.CURRENT_OPCODE == 1 ? ClientMain.MAP_PATH : ClientMain.LOCAL_OUTPUT_PATH;
-		FileUtils.useBufferedOutPutStream(key, value, filePath + "/" + ClientMain.CLIENT_NUM + "_" + ClientMain.CURRENT_FILE);
+		try {
+			if (outputFile != null) {
+				collector.write(key, value, outputFile);
+			}
+			else if (ClientMain.CURRENT_OPCODE == 1) {
+				String mapFile = ClientMain.MAP_PATH + "/" + ClientMain.CLIENT_NUM + "_" + currentFile;
+				if (HASH_SHUFFLE.equals(shuffleMode)) {
+					mapFile = mapFile + "-part-" + HashPartitioner.getPartition(key, ClientMain.N_INSTANCES);
+				}
+				getSortBuffer().add(key, value, mapFile);
+			}
+			else {
+				outputCollector.write(key, value, ClientMain.LOCAL_OUTPUT_PATH + "/" + ClientMain.CLIENT_NUM + "_" + currentFile);
+			}
+		} catch (IOException e) {
+			SortClient.LOG.error("Writing to the output of {} failed", currentFile, e);
+			if (writeFailure == null) {
+				writeFailure = e;
+			}
+		}
+	}
+
+	/**
+	 * Returns the sort buffer for map output, creating it on first use
+	 * @return
+	 */
+	private SortBuffer getSortBuffer() {
+		if (sortBuffer == null) {
+			Combiner combinerInstance = null;
+			if (Context.combiner != null) {
+				try {
+					combinerInstance = GenericFactory.getInstance(Context.combiner);
+				} catch (IllegalAccessException | InstantiationException e) {
+					throw new IllegalStateException("Cannot instantiate combiner " + Context.combiner.getName(), e);
+				}
+			}
+			sortBuffer = new SortBuffer(Context.sortBufferSize, combinerInstance);
+		}
+		return sortBuffer;
+	}
+
+	/**
+	 * Method to flush and close all the files written through this context.
+	 * Buffered map output is spilled and merged into sorted map output files.
+	 * If a write failed, the files are discarded as by abort instead.
+	 * @throws IOException if a write failed, or the files cannot be closed
+	 */
+	public void close() throws IOException {
+		if (writeFailure != null) {
+			abort();
+			throw new IOException("Writing the output of " + currentFile + " failed", writeFailure);
+		}
+		try {
+			if (sortBuffer != null) {
+				SortBuffer buffer = sortBuffer;
+				sortBuffer = null;
+				buffer.close();
+			}
+		} finally {
+			try {
+				collector.close();
+			} finally {
+				outputCollector.close();
+			}
+		}
+	}
+
+	/**
+	 * Method to close all the files written through this context when the task writing them failed. The
+	 * buffered map output is dropped and the output of the job uploaded so far is discarded. Failures are
+	 * logged, the failure of the task is the one to report.
+	 */
+	public void abort() {
+		sortBuffer = null;
+		try {
+			collector.abort();
+		} catch (IOException e) {
+			SortClient.LOG.warn("Closing the files of {} failed", currentFile, e);
+		}
+		try {
+			outputCollector.abort();
+		} catch (IOException e) {
+			SortClient.LOG.warn("Discarding the output of {} failed", currentFile, e);
+		}
 	}
 
 	/**
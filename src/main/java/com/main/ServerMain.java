@@ -24,6 +24,7 @@ public class ServerMain {
 	public static String CURRENT_TASK;
 	public static String LOGS_PATH;
 	public static String TEMP_PATH;
+	public static String SHUFFLE_MODE = Context.SORT_SHUFFLE;
 
 	/**
 	 * Sets the Server Parameters.
@@ -0,0 +1,126 @@
+package com.map;
+
+/**
+ * A byte range [start, end) of an input file. The split owns every line that starts inside its range.
+ * Compressed files cannot be split and are always read whole.
+ */
+public class InputSplit {
+
+	private String key;
+	private long start;
+	private long end;
+	private long fileLength;
+	private int index;
+	private int id;
+
+	/**
+	 * @param key S3 key of the input file
+	 * @param start first byte of the split
+	 * @param end byte after the last byte of the split
+	 * @param fileLength length of the whole input file
+	 * @param index position of the split in the file
+	 * @param id position of the split among all the splits of the job, the same on every node
+	 */
+	public InputSplit(String key, long start, long end, long fileLength, int index, int id) {
+		this.key = key;
+		this.start = start;
+		this.end = end;
+		this.fileLength = fileLength;
+		this.index = index;
+		this.id = id;
+	}
+
+	/**
+	 * @return the key
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the start
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the end
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return the length of the split in bytes
+	 */
+	public long getLength() {
+		return end - start;
+	}
+
+	/**
+	 * Returns the first byte to fetch for the split. Splits that do not start the file are fetched from one
+	 * byte before their start, so that the reader can tell whether the first line belongs to the previous split.
+	 * @return
+	 */
+	public long getFetchStart() {
+		return start == 0 ? 0 : start - 1;
+	}
+
+	/**
+	 * @return the fileLength
+	 */
+	public long getFileLength() {
+		return fileLength;
+	}
+
+	/**
+	 * @return true if the file is gzip compressed
+	 */
+	public boolean isCompressed() {
+		return isCompressed(key);
+	}
+
+	/**
+	 * @return true if the split covers the whole file
+	 */
+	public boolean isWholeFile() {
+		return start == 0 && end == fileLength;
+	}
+
+	/**
+	 * @return the position of the split among all the splits of the job
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Returns a name for the split, used to name the map output written for it. Splits are mapped at the
+	 * same time, so the name is made unique by the id of the split; the file name only makes it readable.
+	 * @return
+	 */
+	public String getName() {
+		String name = key.substring(key.lastIndexOf('/') + 1).split("\\.")[0];
+		if (isWholeFile()) {
+			return name + "-" + id;
+		}
+		return name + "-" + index + "-" + id;
+	}
+
+	/**
+	 * @param key
+	 * @return true if the file with the given key is gzip compressed
+	 */
+	public static boolean isCompressed(String key) {
+		return key.endsWith(".gz");
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "InputSplit [key=" + key + ", start=" + start + ", end=" + end + "]";
+	}
+}
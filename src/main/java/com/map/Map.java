@@ -1,38 +1,191 @@
 package com.map;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.aws.AWSManager;
+import com.aws.AsyncUploader;
 import com.main.ClientMain;
 import com.main.Context;
+import com.map.SplitPrefetcher.PrefetchedSplit;
+import com.net.ShuffleClient;
+import com.net.SortClient;
+import com.sort.RunMerger;
+import com.utils.FileUtils;
 import com.utils.GenericFactory;
+import com.utils.TextView;
 
 /**
  * Provides an implementation of Map Task
  */
 public class Map {
 	public AWSManager AWSConnect;
-	Mapper mapper; 
-	public Context context = new Context();
-	public String currentFile;
 
 	public Map() throws IllegalAccessException, InstantiationException {
 		this.AWSConnect = new AWSManager();
-		this.mapper = GenericFactory.getInstance(Context.mapper);
+		// Fail early if the mapper cannot be instantiated
+		GenericFactory.getInstance(Context.mapper);
 	}
 
 	/**
-	 * Implementation of map method for Map Task.
+	 * Implementation of map method for Map Task. The input splits of this node are downloaded ahead by a
+	 * prefetcher and mapped in parallel by a pool of map threads. The phase ends only once the map output
+	 * has been published.
 	 * @param clientNum
+	 * @throws InterruptedException
+	 * @throws IOException if a split cannot be mapped, or the map output cannot be published
 	 */
-	public void map(int clientNum) {
-		AWSConnect.mapAllFiles(clientNum, this.mapper);	
-		File mapDirectory = new File(ClientMain.MAP_PATH);
-		File[] files = mapDirectory.listFiles();
-		for(File f : files) {
-			if (f.getName().startsWith(""+clientNum)){
-				AWSConnect.sendFileToS3(ClientMain.MAP_PATH+"/"+f.getName(), ClientMain.MAP_PATH+"/"+f.getName());	
-			}			
-		}
-	}	
-}
\ No newline at end of file
+	public void map(int clientNum) throws InterruptedException, IOException {
+		ArrayList<InputSplit> inputSplits = AWSConnect.getInputFiles(clientNum);
+		String spoolDir = ClientMain.TEMP_PATH + "/" + "prefetch";
+		FileUtils.createDir(spoolDir);
+		int mapThreads = Math.max(1, Context.mapThreads);
+		SplitPrefetcher prefetcher = new SplitPrefetcher(inputSplits, AWSConnect.getSplitFetcher(), spoolDir,
+				mapThreads + Context.prefetchDepth, Context.prefetchBudget);
+		prefetcher.start();
+		ExecutorService pool = Executors.newFixedThreadPool(mapThreads);
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		for (int i = 0; i < inputSplits.size(); i++) {
+			results.add(pool.submit(new MapTask(prefetcher)));
+		}
+		pool.shutdown();
+		IOException failure = null;
+		try {
+			for (Future<Void> result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = new IOException("Mapping a split failed", e.getCause());
+					}
+				}
+			}
+		} finally {
+			prefetcher.close();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		if (Context.HASH_SHUFFLE.equals(Context.shuffleMode)) {
+			shuffleByHash(clientNum);
+			return;
+		}
+		AsyncUploader uploader = new AsyncUploader(AWSConnect, Context.uploadThreads, 2 * Context.uploadThreads);
+		try {
+			File mapDirectory = new File(ClientMain.MAP_PATH);
+			File[] files = mapDirectory.listFiles();
+			for(File f : files) {
+				if (f.getName().startsWith(""+clientNum)){
+					uploader.submit(ClientMain.MAP_PATH+"/"+f.getName(), ClientMain.MAP_PATH+"/"+f.getName());
+				}
+			}
+			uploader.awaitAll();
+		} finally {
+			uploader.shutdown();
+		}
+	}
+
+	/**
+	 * Method to merge the hash partitioned map output of this node into one sorted file per reducer and
+	 * publish it where the merge phase of each reducer expects it. A file is published for every reducer,
+	 * even an empty one, since each reducer waits for one file from every node. Files are uploaded in the
+	 * background while the next ones are merged.
+	 * @param clientNum
+	 * @throws InterruptedException
+	 * @throws IOException if a file cannot be merged or uploaded
+	 */
+	private void shuffleByHash(int clientNum) throws InterruptedException, IOException {
+		AsyncUploader uploader = null;
+		if (!ShuffleClient.isEnabled()) {
+			uploader = new AsyncUploader(AWSConnect, Context.uploadThreads, 2 * Context.uploadThreads);
+		}
+		try {
+			mergeHashPartitions(clientNum, uploader);
+			if (uploader != null) {
+				uploader.awaitAll();
+			}
+		} finally {
+			if (uploader != null) {
+				uploader.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Method to merge the map output files of every reducer and hand them to the uploader.
+	 * @param clientNum
+	 * @param uploader uploads the merged files to S3, null with direct shuffle, which backs them up instead
+	 * @throws InterruptedException
+	 * @throws IOException if the file of a reducer cannot be merged
+	 */
+	private void mergeHashPartitions(int clientNum, AsyncUploader uploader) throws InterruptedException, IOException {
+		File[] files = new File(ClientMain.MAP_PATH).listFiles();
+		for (int partition = 0; partition < ClientMain.N_INSTANCES; partition++) {
+			List<String> partitionFiles = new ArrayList<String>();
+			for (File f : files) {
+				if (f.getName().startsWith(clientNum + "_") && f.getName().endsWith("-part-" + partition)) {
+					partitionFiles.add(f.getPath());
+				}
+			}
+			String partitionFile = ClientMain.SORT_PATH + "/" + partition + "_" + clientNum;
+			RunMerger.merge(partitionFiles, partitionFile);
+			String key = ClientMain.SORT_PATH + "/" + partition + "/" + clientNum;
+			if (uploader != null) {
+				uploader.submit(partitionFile, key);
+			}
+			else if (partition != clientNum) {
+				// the partition of this node is only read here, from local disk
+				ShuffleClient.backUp(AWSConnect, partitionFile, key);
+			}
+		}
+	}
+
+	/**
+	 * Maps the next downloaded input split with its own Mapper and Context.
+	 */
+	private class MapTask implements Callable<Void> {
+		private SplitPrefetcher prefetcher;
+
+		public MapTask(SplitPrefetcher prefetcher) {
+			this.prefetcher = prefetcher;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			PrefetchedSplit prefetched = prefetcher.take();
+			if (prefetched == null) {
+				return null;
+			}
+			try {
+				InputSplit split = prefetched.getSplit();
+				SortClient.LOG.info("Mapping split: {}", split);
+				Mapper mapper = GenericFactory.getInstance(Context.mapper);
+				Context context = new Context();
+				context.setCurrentFile(split.getName());
+				SplitReader reader = new SplitReader(split, prefetched.open());
+				try {
+					TextView line = new TextView();
+					while (reader.readLine(line)) {
+						mapper.map(line, context);
+					}
+				} catch (Throwable t) {
+					context.abort();
+					throw t;
+				} finally {
+					reader.close();
+				}
+				context.close();
+			} finally {
+				prefetcher.release(prefetched);
+			}
+			return null;
+		}
+	}
+}
@@ -1,9 +1,21 @@
 package com.map;
 
 import com.main.Context;
+import com.utils.TextView;
 /**
  * Provides an abstraction of Mapper
  */
 public abstract class Mapper {
 	public abstract void map(String key, String value, Context context);
+
+	/**
+	 * Method called by the framework for every input line. Mappers that work on the line without keeping
+	 * it override it, by default the line is decoded from UTF-8 to a String and handed to
+	 * map(String, String, Context).
+	 * @param line view of the line, reused for the next line
+	 * @param context
+	 */
+	public void map(TextView line, Context context) {
+		map(null, line.toString(), context);
+	}
 }
\ No newline at end of file
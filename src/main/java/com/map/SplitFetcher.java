@@ -0,0 +1,20 @@
+package com.map;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Provides an abstraction over the storage that input files are fetched from.
+ */
+public interface SplitFetcher {
+
+	/**
+	 * Opens the bytes [start, end) of an input file.
+	 * @param key
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws IOException
+	 */
+	InputStream open(String key, long start, long end) throws IOException;
+}
@@ -0,0 +1,38 @@
+package com.map;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cuts input files into splits. Uncompressed files larger than the split size are cut into byte
+ * ranges of the split size, all other files become a single split. Every split is numbered in the
+ * order of the plan.
+ */
+public class SplitPlanner {
+
+	/**
+	 * Plans the splits of the given files. Every node plans the same splits for the same listing.
+	 * @param keys S3 keys of the input files
+	 * @param sizes sizes of the input files in bytes
+	 * @param splitSize
+	 * @return
+	 */
+	public static List<InputSplit> plan(List<String> keys, List<Long> sizes, long splitSize) {
+		if (splitSize <= 0) throw new IllegalArgumentException("Split size must be positive: " + splitSize);
+		List<InputSplit> splits = new ArrayList<InputSplit>();
+		for (int i = 0; i < keys.size(); i++) {
+			String key = keys.get(i);
+			long size = sizes.get(i);
+			if (InputSplit.isCompressed(key) || size <= splitSize) {
+				splits.add(new InputSplit(key, 0, size, size, 0, splits.size()));
+				continue;
+			}
+			int index = 0;
+			for (long start = 0; start < size; start += splitSize) {
+				splits.add(new InputSplit(key, start, Math.min(size, start + splitSize), size, index, splits.size()));
+				index++;
+			}
+		}
+		return splits;
+	}
+}
@@ -0,0 +1,258 @@
+package com.map;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.net.SortClient;
+
+/**
+ * Downloads input splits to a local spool directory ahead of the map threads, so that the download
+ * of the next splits overlaps with the mapping of the current ones. At most a given number of splits,
+ * and about a given number of bytes, are downloaded but not yet released by the map threads.
+ * Byte-range splits are downloaded with a small overhang past their end for the line crossing the end,
+ * the rest of the remote file is only read if that line is longer than the overhang.
+ */
+public class SplitPrefetcher {
+
+	private static final int MAX_RETRY = 3;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final long OVERHANG = 64 * 1024;
+
+	private List<InputSplit> splits;
+	private SplitFetcher fetcher;
+	private String spoolDir;
+	private int depth;
+	private long budget;
+	private ExecutorService downloaders;
+	private Thread scheduler;
+	private LinkedBlockingQueue<PrefetchedSplit> ready = new LinkedBlockingQueue<PrefetchedSplit>();
+	private final Object lock = new Object();
+	private int taken = 0;
+	private int buffered = 0;
+	private long bufferedBytes = 0;
+
+	/**
+	 * @param splits splits to download, in order
+	 * @param fetcher
+	 * @param spoolDir local directory for downloaded splits
+	 * @param depth maximum number of splits downloaded and not yet released
+	 * @param budget maximum number of bytes downloaded and not yet released, a larger split is downloaded alone
+	 */
+	public SplitPrefetcher(List<InputSplit> splits, SplitFetcher fetcher, String spoolDir, int depth, long budget) {
+		this.splits = splits;
+		this.fetcher = fetcher;
+		this.spoolDir = spoolDir;
+		this.depth = Math.max(1, depth);
+		this.budget = budget;
+	}
+
+	/**
+	 * Starts downloading the splits in the background.
+	 */
+	public void start() {
+		downloaders = Executors.newFixedThreadPool(depth);
+		scheduler = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				schedule();
+			}
+		}, "split-prefetcher");
+		scheduler.setDaemon(true);
+		scheduler.start();
+	}
+
+	/**
+	 * Waits for the next downloaded split. Splits are handed out in the order their downloads complete.
+	 * @return the split or null if all splits have been handed out
+	 * @throws InterruptedException
+	 */
+	public PrefetchedSplit take() throws InterruptedException {
+		synchronized (lock) {
+			if (taken == splits.size()) {
+				return null;
+			}
+			taken++;
+		}
+		return ready.take();
+	}
+
+	/**
+	 * Deletes the local copy of a split and makes room for the next download.
+	 * @param prefetched
+	 */
+	public void release(PrefetchedSplit prefetched) {
+		prefetched.file.delete();
+		synchronized (lock) {
+			buffered--;
+			bufferedBytes -= prefetched.length;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Stops all downloads.
+	 */
+	public void close() {
+		if (scheduler != null) {
+			scheduler.interrupt();
+			downloaders.shutdownNow();
+		}
+	}
+
+	/**
+	 * Submits the downloads in order, waiting for room within the depth and byte budget.
+	 */
+	private void schedule() {
+		try {
+			for (int i = 0; i < splits.size(); i++) {
+				final InputSplit split = splits.get(i);
+				final long length = fetchEnd(split) - split.getFetchStart();
+				synchronized (lock) {
+					while (buffered > 0 && (buffered >= depth || bufferedBytes + length > budget)) {
+						lock.wait();
+					}
+					buffered++;
+					bufferedBytes += length;
+				}
+				final File file = new File(spoolDir + "/" + i + "_" + split.getName());
+				downloaders.submit(new Runnable() {
+					@Override
+					public void run() {
+						ready.add(download(split, file, length));
+					}
+				});
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			downloaders.shutdown();
+		}
+	}
+
+	/**
+	 * Returns the byte after the last byte of the split that is downloaded ahead.
+	 * @param split
+	 * @return
+	 */
+	private static long fetchEnd(InputSplit split) {
+		return Math.min(split.getFileLength(), split.getEnd() + (split.isWholeFile() ? 0 : OVERHANG));
+	}
+
+	/**
+	 * Downloads the fetched range of a split to a local file, retrying failed downloads.
+	 * @param split
+	 * @param file
+	 * @param length
+	 * @return
+	 */
+	private PrefetchedSplit download(InputSplit split, File file, long length) {
+		Exception failure = null;
+		for (int attempt = 0; attempt <= MAX_RETRY; attempt++) {
+			try {
+				InputStream in = fetcher.open(split.getKey(), split.getFetchStart(), fetchEnd(split));
+				OutputStream out = new FileOutputStream(file);
+				try {
+					byte[] buffer = new byte[BUFFER_SIZE];
+					int read;
+					while ((read = in.read(buffer)) != -1) {
+						out.write(buffer, 0, read);
+					}
+				} finally {
+					out.close();
+					in.close();
+				}
+				return new PrefetchedSplit(split, file, length, null);
+			} catch (IOException | RuntimeException e) {
+				failure = e;
+				SortClient.LOG.warn("Download of {} failed, attempt {}: {}", split, attempt + 1, e.getMessage());
+			}
+		}
+		return new PrefetchedSplit(split, file, length, failure);
+	}
+
+	/**
+	 * A split whose bytes have been downloaded to a local file.
+	 */
+	public class PrefetchedSplit {
+		private InputSplit split;
+		private File file;
+		private long length;
+		private Exception failure;
+
+		private PrefetchedSplit(InputSplit split, File file, long length, Exception failure) {
+			this.split = split;
+			this.file = file;
+			this.length = length;
+			this.failure = failure;
+		}
+
+		/**
+		 * @return the split
+		 */
+		public InputSplit getSplit() {
+			return split;
+		}
+
+		/**
+		 * Opens the split from the local file, continuing into the remote file for the line that crosses the end
+		 * of the split.
+		 * @return stream of the input file starting at split.getFetchStart()
+		 * @throws IOException if the download failed
+		 */
+		public InputStream open() throws IOException {
+			if (failure != null) {
+				throw new IOException("Could not download " + split, failure);
+			}
+			InputStream local = new FileInputStream(file);
+			if (fetchEnd(split) == split.getFileLength()) {
+				return local;
+			}
+			return new SequenceInputStream(local, new TailInputStream(split));
+		}
+	}
+
+	/**
+	 * Stream of the rest of the input file after a split, opened only if it is read.
+	 */
+	private class TailInputStream extends InputStream {
+		private InputSplit split;
+		private InputStream in;
+
+		private TailInputStream(InputSplit split) {
+			this.split = split;
+		}
+
+		private InputStream stream() throws IOException {
+			if (in == null) {
+				in = fetcher.open(split.getKey(), fetchEnd(split), split.getFileLength());
+			}
+			return in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return stream().read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return stream().read(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (in != null) {
+				in.close();
+			}
+		}
+	}
+}
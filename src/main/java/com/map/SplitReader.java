@@ -0,0 +1,69 @@
+package com.map;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import com.utils.LineReader;
+import com.utils.TextView;
+
+/**
+ * Reads the lines of an input split from a stream that starts at the fetch start of the split.
+ */
+public class SplitReader {
+
+	private InputSplit split;
+	private LineReader reader;
+
+	/**
+	 * @param split
+	 * @param in stream of the input file starting at split.getFetchStart()
+	 * @throws IOException
+	 */
+	public SplitReader(InputSplit split, InputStream in) throws IOException {
+		this.split = split;
+		if (split.isWholeFile()) {
+			this.reader = new LineReader(split.isCompressed() ? new GZIPInputStream(in) : in);
+		}
+		else {
+			this.reader = new LineReader(in);
+			// the line that crosses the start of the split belongs to the previous split
+			if (split.getStart() > 0) {
+				reader.skipLine();
+			}
+		}
+	}
+
+	/**
+	 * Reads the next line of the split.
+	 * @return the line or null once the next line starts after the split
+	 * @throws IOException
+	 */
+	public String readLine() throws IOException {
+		if (!split.isWholeFile() && split.getFetchStart() + reader.getPosition() >= split.getEnd()) {
+			return null;
+		}
+		return reader.readLine();
+	}
+
+	/**
+	 * Reads the next line of the split into a view, without copying it to a String.
+	 * @param view set to the line, valid until the next line is read
+	 * @return false once the next line starts after the split
+	 * @throws IOException
+	 */
+	public boolean readLine(TextView view) throws IOException {
+		if (!split.isWholeFile() && split.getFetchStart() + reader.getPosition() >= split.getEnd()) {
+			return false;
+		}
+		return reader.readLine(view);
+	}
+
+	/**
+	 * Closes the underlying stream.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -0,0 +1,23 @@
+package com.net;
+
+import java.io.IOException;
+
+import com.utils.GrowingFileInputStream;
+
+/**
+ * Provides an abstraction over the storage that a partition is fetched from when the node that wrote it
+ * cannot serve it directly.
+ */
+public interface PartitionFetcher {
+
+	/**
+	 * Fetches the partition written by the given node to a local file. The file is written over from its
+	 * start, with the same bytes an earlier attempt may have written.
+	 * @param partition
+	 * @param node node that wrote the partition
+	 * @param localFile
+	 * @param stream told about the bytes fetched, may be null
+	 * @throws IOException
+	 */
+	void fetch(int partition, int node, String localFile, GrowingFileInputStream stream) throws IOException;
+}
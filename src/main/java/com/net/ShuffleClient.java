@@ -0,0 +1,333 @@
+package com.net;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.aws.AWSManager;
+import com.aws.AsyncUploader;
+import com.main.ClientMain;
+import com.main.Context;
+import com.utils.GrowingFileInputStream;
+
+/**
+ * This Class pulls partitions directly from the shuffle servers of the other nodes. With shuffle backup,
+ * every node also uploads its partitions to S3 in the background, and a partition that cannot be fetched
+ * from its node is fetched from S3 instead. The backup is best effort, no node waits for it.
+ */
+public class ShuffleClient {
+	private static final int MAX_RETRY = 3;
+	public static final int MAX_FETCH_THREADS = 8;
+	private static final int CONNECT_TIMEOUT = 10000;
+	private static final int BUFFER_SIZE = 256 * 1024;
+	// Base of the backoff between fetch attempts, in milliseconds
+	static long retryBackoff = 1000;
+	// Longest wait for the next bytes of a partition, in milliseconds, a peer that stalls longer has failed
+	static long readTimeout = 60000;
+	// Uploads of the partitions of this node to S3, for the nodes that cannot fetch them from this node
+	private static AsyncUploader backup;
+
+	/**
+	 * Method to check whether partitions are exchanged directly between the nodes. Every node decides the
+	 * same way from the same address map, so either all nodes use S3 or none does.
+	 * @return false if direct shuffle is turned off or some node has no shuffle server
+	 */
+	public static boolean isEnabled() {
+		return Context.directShuffle && ClientMain.PEER_ADDRESSES.size() == ClientMain.N_INSTANCES;
+	}
+
+	/**
+	 * Method to upload a partition of this node to S3 in the background, if shuffle backup is on, where the
+	 * nodes that cannot fetch it from this node find it.
+	 * @param AWSConnect
+	 * @param partitionFile
+	 * @param key
+	 * @throws InterruptedException
+	 */
+	public static synchronized void backUp(AWSManager AWSConnect, String partitionFile, String key)
+			throws InterruptedException {
+		if (!Context.shuffleBackup) {
+			return;
+		}
+		if (backup == null) {
+			backup = new AsyncUploader(AWSConnect, Context.uploadThreads, 2 * Context.uploadThreads);
+		}
+		backup.submit(partitionFile, key);
+	}
+
+	/**
+	 * Method to stop the backup uploads of the partitions of this node, once every node has merged its
+	 * partition and none needs them anymore. The uploads still pending are abandoned, and counted in the log
+	 * as the uploads that would have held the merge barrier had the nodes waited for them.
+	 */
+	public static void stopBackUp() {
+		AsyncUploader uploads;
+		synchronized (ShuffleClient.class) {
+			uploads = backup;
+			backup = null;
+		}
+		if (uploads == null) {
+			return;
+		}
+		SortClient.LOG.info("Stopping the backup of the partitions of this node: {} of {} uploads unfinished",
+				uploads.countPending(), uploads.countSubmitted());
+		uploads.shutdown();
+	}
+
+	/**
+	 * Method to fetch the given partition from every node in parallel. The partition of this node
+	 * is already local and is not copied.
+	 * @param partition
+	 * @param localDir
+	 * @param fallback fetches the partitions that cannot be fetched from their node, may be null
+	 * @return the local files of the partition, one per node
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static ArrayList<String> fetchPartitions(final int partition, String localDir,
+			final PartitionFetcher fallback) throws IOException, InterruptedException {
+		ArrayList<String> localFiles = new ArrayList<String>();
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(MAX_FETCH_THREADS, ClientMain.N_INSTANCES)));
+		try {
+			for (int peer = 0; peer < ClientMain.N_INSTANCES; peer++) {
+				if (peer == ClientMain.CLIENT_NUM) {
+					localFiles.add(ClientMain.SORT_PATH + "/" + partition + "_" + peer);
+					continue;
+				}
+				final int node = peer;
+				final String localFile = localDir + "/" + peer;
+				localFiles.add(localFile);
+				results.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						fetchPartition(node, partition, localFile, null, fallback);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					throw new IOException("Fetching partition " + partition + " failed", e.getCause());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return localFiles;
+	}
+
+	/**
+	 * Method to start fetching the given partition from every node in the background. The returned streams
+	 * can be read while the partition is still arriving, a read waits for the bytes it needs.
+	 * @param partition
+	 * @param localDir
+	 * @param localFiles filled with the local files of the partition, one per node
+	 * @param fallback fetches the partitions that cannot be fetched from their node, may be null
+	 * @param pool runs the fetches, shut down by the caller, with shutdownNow to stop the fetches still running
+	 * @return streams over the partition, one per node
+	 * @throws IOException
+	 */
+	public static List<InputStream> openPartitions(final int partition, String localDir, List<String> localFiles,
+			final PartitionFetcher fallback, ExecutorService pool) throws IOException {
+		List<InputStream> streams = new ArrayList<InputStream>();
+		for (int peer = 0; peer < ClientMain.N_INSTANCES; peer++) {
+			if (peer == ClientMain.CLIENT_NUM) {
+				String localPartition = ClientMain.SORT_PATH + "/" + partition + "_" + peer;
+				localFiles.add(localPartition);
+				streams.add(new FileInputStream(localPartition));
+				continue;
+			}
+			final int node = peer;
+			final String localFile = localDir + "/" + peer;
+			final GrowingFileInputStream stream = new GrowingFileInputStream(localFile);
+			localFiles.add(localFile);
+			streams.add(stream);
+			pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					try {
+						fetchPartition(node, partition, localFile, stream, fallback);
+						stream.complete();
+					} catch (IOException e) {
+						stream.fail(e);
+					} catch (InterruptedException e) {
+						stream.fail(new IOException("Interrupted while fetching partition " + partition, e));
+					}
+					return null;
+				}
+			});
+		}
+		return streams;
+	}
+
+	/**
+	 * Method to fetch the partition written by a node from that node, or from the fallback if the node still
+	 * cannot serve it after all the retries.
+	 * @param node
+	 * @param partition
+	 * @param localFile
+	 * @param stream told about the bytes fetched, may be null
+	 * @param fallback may be null
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private static void fetchPartition(int node, int partition, String localFile, GrowingFileInputStream stream,
+			PartitionFetcher fallback) throws IOException, InterruptedException {
+		String address = ClientMain.PEER_ADDRESSES.get(node);
+		try {
+			fetchWithRetry(address, partition, localFile, stream);
+		} catch (IOException e) {
+			if (fallback == null) {
+				throw e;
+			}
+			SortClient.LOG.warn("Fetching partition {} from {} failed: {}. Fetching it from the backup", partition,
+					address, e.getMessage());
+			fallback.fetch(partition, node, localFile, stream);
+			SortClient.LOG.info("Fetched partition {} of node {} from the backup", partition, node);
+		}
+	}
+
+	/**
+	 * Method to fetch a partition, retrying with backoff if the peer cannot be reached.
+	 * @param address host:port of the peer shuffle server
+	 * @param partition
+	 * @param localFile
+	 * @param stream told about the bytes fetched, may be null
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private static void fetchWithRetry(String address, int partition, String localFile, GrowingFileInputStream stream)
+			throws IOException, InterruptedException {
+		for (int retryCount = 0; ; retryCount++) {
+			try {
+				long length = fetch(address, partition, localFile, stream);
+				SortClient.LOG.info("Fetched partition {} from {}: {} bytes", partition, address, length);
+				return;
+			} catch (IOException e) {
+				if (retryCount == MAX_RETRY) {
+					throw e;
+				}
+				SortClient.LOG.info("Fetching partition {} from {} failed: {}. Retry Count: {}", partition, address,
+						e.getMessage(), retryCount + 1);
+				Thread.sleep(retryBackoff << retryCount);
+			}
+		}
+	}
+
+	/**
+	 * Method to fetch a partition from the shuffle server of a peer. The partition is moved from the socket
+	 * to the file through a direct buffer, without passing through the heap. The file is written over, not
+	 * truncated, so that a reader following an earlier attempt only ever sees the same bytes. A peer that
+	 * sends nothing for readTimeout fails the fetch, like a peer that cannot be reached.
+	 * @param address host:port of the peer shuffle server
+	 * @param partition
+	 * @param localFile
+	 * @param stream told about the bytes fetched, may be null
+	 * @return the number of bytes fetched
+	 * @throws IOException
+	 */
+	public static long fetch(String address, int partition, String localFile, GrowingFileInputStream stream)
+			throws IOException {
+		int separator = address.lastIndexOf(':');
+		SocketChannel socket = SocketChannel.open();
+		Selector selector = null;
+		try {
+			socket.socket().connect(new InetSocketAddress(address.substring(0, separator),
+					Integer.parseInt(address.substring(separator + 1))), CONNECT_TIMEOUT);
+			byte[] request = (ClientMain.JOB_ID + "\t" + partition).getBytes("UTF-8");
+			ByteBuffer requestBuffer = ByteBuffer.allocate(4 + request.length);
+			requestBuffer.putInt(request.length).put(request).flip();
+			while (requestBuffer.hasRemaining()) {
+				socket.write(requestBuffer);
+			}
+			// blocking reads of a channel have no timeout, the reads wait on a selector instead
+			selector = Selector.open();
+			socket.configureBlocking(false);
+			socket.register(selector, SelectionKey.OP_READ);
+			ByteBuffer header = ByteBuffer.allocate(8);
+			while (header.hasRemaining()) {
+				if (read(socket, selector, header, address) < 0) {
+					throw new EOFException("Connection closed before the partition length");
+				}
+			}
+			header.flip();
+			long length = header.getLong();
+			if (length < 0) {
+				throw new IOException("Partition " + partition + " is not held by " + address);
+			}
+			FileChannel file = new RandomAccessFile(localFile, "rw").getChannel();
+			try {
+				// FileChannel.transferFrom copies from a socket through a small buffer, a large direct one is faster
+				ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+				long position = 0;
+				while (position < length) {
+					buffer.clear();
+					buffer.limit((int) Math.min(BUFFER_SIZE, length - position));
+					if (read(socket, selector, buffer, address) < 0) {
+						throw new EOFException(position + " of " + length + " bytes received");
+					}
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						position += file.write(buffer);
+					}
+					if (stream != null) {
+						stream.written(position);
+					}
+				}
+				file.truncate(length);
+			} finally {
+				file.close();
+			}
+			return length;
+		} finally {
+			if (selector != null) {
+				selector.close();
+			}
+			socket.close();
+		}
+	}
+
+	/**
+	 * Method to read from a non-blocking socket, waiting at most readTimeout for bytes to arrive.
+	 * @param socket registered for reads with the selector
+	 * @param selector
+	 * @param buffer
+	 * @param address of the peer, for the error message
+	 * @return the number of bytes read, -1 at the end of the stream
+	 * @throws IOException if the peer sent nothing for readTimeout
+	 */
+	private static int read(SocketChannel socket, Selector selector, ByteBuffer buffer, String address)
+			throws IOException {
+		int n;
+		while ((n = socket.read(buffer)) == 0) {
+			if (selector.select(readTimeout) == 0) {
+				if (Thread.currentThread().isInterrupted()) {
+					throw new InterruptedIOException("Interrupted while fetching from " + address);
+				}
+				throw new SocketTimeoutException("No data from " + address + " for " + readTimeout + " ms");
+			}
+			selector.selectedKeys().clear();
+		}
+		return n;
+	}
+}
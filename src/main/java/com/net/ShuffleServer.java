@@ -0,0 +1,58 @@
+package com.net;
+
+import java.net.InetSocketAddress;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+/**
+ * This Class runs alongside the client on every node and serves the sorted partitions of the node to its peers,
+ * so that partitions move directly between nodes instead of through S3.
+ */
+public class ShuffleServer {
+	private static EventLoopGroup bossGroup;
+	private static EventLoopGroup workerGroup;
+	private static Channel channel;
+
+	/**
+	 * Starts the shuffle server without waiting for it to close.
+	 * @param port port to listen on, 0 for any free port
+	 * @return the port the server listens on
+	 * @throws InterruptedException
+	 */
+	public static int start(int port) throws InterruptedException {
+		bossGroup = new NioEventLoopGroup(1);
+		workerGroup = new NioEventLoopGroup();
+		ServerBootstrap boot = new ServerBootstrap();
+		boot.group(bossGroup, workerGroup)
+		.channel(NioServerSocketChannel.class)
+		.childHandler(new ShuffleServerInitializer())
+		.option(ChannelOption.SO_BACKLOG, 128)
+		.childOption(ChannelOption.SO_KEEPALIVE, true)
+		.childOption(ChannelOption.TCP_NODELAY, true);
+		channel = boot.bind(port).sync().channel();
+		int boundPort = ((InetSocketAddress) channel.localAddress()).getPort();
+		SortClient.LOG.info("Shuffle server started at port {}", boundPort);
+		return boundPort;
+	}
+
+	/**
+	 * Stops the shuffle server.
+	 */
+	public static void stop() {
+		if (channel != null) {
+			channel.close().syncUninterruptibly();
+			channel = null;
+		}
+		if (bossGroup != null) {
+			bossGroup.shutdownGracefully();
+			workerGroup.shutdownGracefully();
+			bossGroup = null;
+			workerGroup = null;
+		}
+	}
+}
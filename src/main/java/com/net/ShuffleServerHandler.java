@@ -0,0 +1,119 @@
+package com.net;
+
+import java.io.File;
+
+import com.main.ClientMain;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.SimpleChannelInboundHandler;
+
+/**
+ * This Class answers a request for a partition with its length followed by its contents.
+ * A request is the job id and the partition number separated by a tab. The length is -1 if
+ * the partition is not held by this node.
+ */
+public class ShuffleServerHandler extends SimpleChannelInboundHandler<String> {
+	// Files are sent as regions of at most this many bytes, a few at a time
+	private static final long CHUNK_SIZE = 4 * 1024 * 1024;
+	private static final int MAX_CHUNKS_IN_FLIGHT = 2;
+
+	/**
+	 * Method for behavior when a request is read.
+	 */
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, String request) throws Exception {
+		File partition = resolve(request);
+		ByteBuf header = ctx.alloc().buffer(8);
+		if (partition == null) {
+			SortClient.LOG.info("Shuffle request for unknown partition: {}", request);
+			header.writeLong(-1);
+			ctx.writeAndFlush(header).addListener(ChannelFutureListener.CLOSE);
+			return;
+		}
+		SortClient.LOG.info("Sending partition {} to {}", partition.getName(), ctx.channel().remoteAddress());
+		long length = partition.length();
+		header.writeLong(length);
+		if (length == 0) {
+			ctx.writeAndFlush(header).addListener(ChannelFutureListener.CLOSE);
+			return;
+		}
+		ctx.write(header);
+		new PartitionSender(ctx, partition, length).send();
+	}
+
+	/**
+	 * Sends a file as a sequence of file regions, which the transport copies from the page cache to the socket
+	 * without reading them into the heap. The next region is written only when an earlier one has been sent,
+	 * so a slow peer holds back the sender instead of queueing the whole file.
+	 */
+	private static class PartitionSender implements ChannelFutureListener {
+		private ChannelHandlerContext ctx;
+		private File file;
+		private long length;
+		private long position = 0;
+		private int inFlight = 0;
+
+		public PartitionSender(ChannelHandlerContext ctx, File file, long length) {
+			this.ctx = ctx;
+			this.file = file;
+			this.length = length;
+		}
+
+		/**
+		 * Method to write regions until the limit of regions in flight is reached.
+		 */
+		public void send() {
+			while (position < length && inFlight < MAX_CHUNKS_IN_FLIGHT) {
+				long count = Math.min(CHUNK_SIZE, length - position);
+				inFlight++;
+				ctx.writeAndFlush(new DefaultFileRegion(file, position, count)).addListener(this);
+				position += count;
+			}
+		}
+
+		@Override
+		public void operationComplete(ChannelFuture future) {
+			inFlight--;
+			if (!future.isSuccess()) {
+				SortClient.LOG.info("Sending partition {} failed: {}", file.getName(), future.cause());
+				ctx.close();
+			}
+			else if (position < length) {
+				send();
+			}
+			else if (inFlight == 0) {
+				ctx.close();
+			}
+		}
+	}
+
+	/**
+	 * Method to find the file of the requested partition.
+	 * @param request
+	 * @return the partition file, or null if the request is not for a partition of this node
+	 */
+	private File resolve(String request) {
+		String[] fields = request.split("\t");
+		if (fields.length != 2 || !fields[0].equals(ClientMain.JOB_ID) || ClientMain.SORT_PATH == null) {
+			return null;
+		}
+		int partition;
+		try {
+			partition = Integer.parseInt(fields[1]);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		File file = new File(ClientMain.SORT_PATH + "/" + partition + "_" + ClientMain.CLIENT_NUM);
+		return file.isFile() ? file : null;
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+		cause.printStackTrace();
+		ctx.close();
+	}
+}
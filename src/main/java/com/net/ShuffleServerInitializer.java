@@ -0,0 +1,27 @@
+package com.net;
+
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.util.CharsetUtil;
+
+/**
+ * This class initializes the pipeline for the shuffle server.
+ */
+public class ShuffleServerInitializer extends ChannelInitializer<SocketChannel> {
+	// Requests are short, anything longer is not a shuffle request
+	private static final int MAX_REQUEST_LENGTH = 1024;
+
+	/**
+	 * Initialized the channel pipeline.
+	 */
+	@Override
+	protected void initChannel(SocketChannel channel) throws Exception {
+		ChannelPipeline pipeline = channel.pipeline();
+		pipeline.addLast("shuffle_frame_decoder", new LengthFieldBasedFrameDecoder(MAX_REQUEST_LENGTH, 0, 4, 0, 4));
+		pipeline.addLast("shuffle_decoder", new StringDecoder(CharsetUtil.UTF_8));
+		pipeline.addLast("shuffle_handler", new ShuffleServerHandler());
+	}
+}
@@ -7,12 +7,15 @@ import java.util.HashMap;
 
 import com.aws.AWSManager;
 import com.main.ClientMain;
+import com.main.Context;
 import com.map.Map;
 import com.reduce.Reduce;
 import com.sort.SampleSort;
+import com.utils.BlockCompressedOutputStream;
 import com.utils.FileUtils;
 import com.utils.MessageHandler;
 
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 
@@ -76,7 +79,10 @@ public class SortClientHandler extends ChannelInboundHandlerAdapter{
 				ClientMain.N_INSTANCES = Integer.parseInt(handshakeMessage[1]);
 				Thread.sleep(6000);
 				SortClient.LOG.info("Sending Client ID to Server.. ");
-				response = new MessageHandler(CLIENT_HANDSHAKE_OPCODE, ClientMain.CLIENT_ID+"_"+ClientMain.INPUT_PATH+"_"+ClientMain.OUTPUT_PATH, SUCCESS_STATUS);
+				// the paths may contain the separator, the fields are escaped
+				response = new MessageHandler(CLIENT_HANDSHAKE_OPCODE, MessageHandler.joinFields(ClientMain.CLIENT_ID,
+						ClientMain.INPUT_PATH, ClientMain.OUTPUT_PATH, Context.shuffleMode,
+						String.valueOf(ClientMain.SHUFFLE_PORT)), SUCCESS_STATUS);
 			}
 			else if (requestCodeFromServer == MAP_OPCODE){
 				SortClient.LOG.info("Received AddressMap from Server: {}", messageFromServer);
@@ -87,12 +93,20 @@ public class SortClientHandler extends ChannelInboundHandlerAdapter{
 					if (elemList[0].trim().equals(ClientMain.CLIENT_ID)){
 						ClientMain.CLIENT_NUM = Integer.parseInt(elemList[1].split("\t")[0]);
 					}
-					addressMap.put(elemList[0], elemList[1].split("\t")[1]);
+					String[] addressFields = elemList[1].split("\t");
+					addressMap.put(elemList[0], addressFields[1]);
+					// Shuffle server of the node, on the host the server sees it from
+					if (addressFields.length > 2 && Integer.parseInt(addressFields[2].trim()) > 0) {
+						String host = addressFields[1].substring(0, addressFields[1].lastIndexOf(':'));
+						ClientMain.PEER_ADDRESSES.put(Integer.parseInt(addressFields[0].trim()), host + ":" + addressFields[2].trim());
+					}
 				}
 				SortClient.LOG.info("[START MAP PHASE] => Map");
 				Map m = new Map();
 				ClientMain.MAP_PATH = ClientMain.TEMP_PATH + "/" + "map";
 				FileUtils.createDir(ClientMain.MAP_PATH);
+				ClientMain.SORT_PATH = ClientMain.TEMP_PATH + "/" + "sort";
+				FileUtils.createDir(ClientMain.SORT_PATH);
 				m.map(ClientMain.CLIENT_NUM);
 				SortClient.LOG.info("[END MAP PHASE]  => Map");
 				SortClient.LOG.info("Requesting to Start Shuffle-Sort Step");
@@ -109,18 +123,28 @@ public class SortClientHandler extends ChannelInboundHandlerAdapter{
 				response = new MessageHandler(SORT_READ_AND_SAMPLE_DATA_OPCODE, clientSamples, SUCCESS_STATUS);
 			}
 			else if (requestCodeFromServer == SORT_PARTITION_AND_UPLOAD_DATA_OPCODE){
-				SortClient.LOG.info("Pivots received from Server: {}", messageFromServer);
+				SortClient.LOG.info("Samples of all clients received from Server");
 				SortClient.LOG.info("[START SORT PHASE 3] => Partition and Exchange Data");
-				ss.partitionAndUploadData(messageFromServer, ClientMain.CLIENT_NUM);
+				String partitionSizes = ss.partitionAndUploadData(messageFromServer, ClientMain.CLIENT_NUM);
+				SortClient.LOG.info("Records per partition: {}", partitionSizes);
 				SortClient.LOG.info("[END SORT PHASE 3] => Partition and Exchange Data");
 				SortClient.LOG.info("Requesting Server for Merging Partitions");
-				response = new MessageHandler(SORT_PARTITION_AND_UPLOAD_DATA_OPCODE, "Request Merge", SUCCESS_STATUS);
+				response = new MessageHandler(SORT_PARTITION_AND_UPLOAD_DATA_OPCODE, partitionSizes, SUCCESS_STATUS);
 			}
 			else if (requestCodeFromServer == SORT_MERGE_PARTITION_OPCODE){
 				SortClient.LOG.info("Code: {}, Message received: {}", requestCodeFromServer, messageFromServer);
-				SortClient.LOG.info("[START SORT PHASE 4] => Merge Data");
-				ss.phaseFour(ClientMain.CLIENT_NUM);
-				SortClient.LOG.info("[END SORT PHASE 4] => Merge Data");
+				if (ss.canPipelineReduce(ClientMain.CLIENT_NUM)) {
+					SortClient.LOG.info("[START SORT PHASE 4 AND REDUCE PHASE] => Merge Data and Reduce");
+					ClientMain.CURRENT_OPCODE = REDUCE_OPCODE;
+					ClientMain.LOCAL_OUTPUT_PATH = ClientMain.OUTPUT_FOLDER;
+					ss.mergeAndReduce(ClientMain.CLIENT_NUM, new Reduce());
+					SortClient.LOG.info("[END SORT PHASE 4 AND REDUCE PHASE] => Merge Data and Reduce");
+				}
+				else {
+					SortClient.LOG.info("[START SORT PHASE 4] => Merge Data");
+					ss.phaseFour(ClientMain.CLIENT_NUM);
+					SortClient.LOG.info("[END SORT PHASE 4] => Merge Data");
+				}
 				SortClient.LOG.info("Requesting to Start Reducer Step");
 				SortClient.LOG.info("Requesting server to shutdown Client");
 				response = new MessageHandler(SORT_MERGE_PARTITION_OPCODE, "Request Reduce", SUCCESS_STATUS);
@@ -128,21 +152,41 @@ public class SortClientHandler extends ChannelInboundHandlerAdapter{
 			else if (requestCodeFromServer == REDUCE_OPCODE){
 				SortClient.LOG.info("Code: {}, Message received: {}", requestCodeFromServer, messageFromServer);
 				ClientMain.CURRENT_OPCODE = REDUCE_OPCODE;
+				// every node has merged its partition, the backup is no longer needed
+				ShuffleClient.stopBackUp();
 				SortClient.LOG.info("[START REDUCE PHASE] => Reduce");
 				Reduce r = new Reduce();
 				ClientMain.LOCAL_OUTPUT_PATH = ClientMain.OUTPUT_FOLDER;
-				FileUtils.createDir(ClientMain.LOCAL_OUTPUT_PATH);
-				r.reduce(ClientMain.CLIENT_NUM);
+				ss.mergeHotKeyPartials(ClientMain.CLIENT_NUM);
+				r.reduce(ClientMain.CLIENT_NUM, ss.reduceRanges);
 				SortClient.LOG.info("[END REDUCE PHASE] => Reduce");
+				logCompression();
 				SortClient.LOG.info("Requesting server to shutdown Client");
 				new AWSManager().sendFileToS3(ClientMain.LOGS_PATH + "/" + "client_"+ ClientMain.CLIENT_ID + ".log", 
 						ClientMain.LOGS_PATH + "/" + "client_"+ ClientMain.CLIENT_ID + ".log");
-				response = new MessageHandler(CLIENT_EXIT_OPCODE, "Request Shutdown", SUCCESS_STATUS);
+				// the server adds up the compression of every node
+				response = new MessageHandler(CLIENT_EXIT_OPCODE,
+						MessageHandler.joinFields(String.valueOf(BlockCompressedOutputStream.getRawBytes()),
+								String.valueOf(BlockCompressedOutputStream.getStoredBytes())), SUCCESS_STATUS);
 			}
 		}
 		ctx.write(response);
 	}
 
+	/**
+	 * Method to log how much the intermediate codec compressed the intermediate files written by this node.
+	 */
+	private void logCompression() {
+		if (Context.intermediateCodec == null) {
+			return;
+		}
+		long raw = BlockCompressedOutputStream.getRawBytes();
+		long stored = BlockCompressedOutputStream.getStoredBytes();
+		SortClient.LOG.info("Intermediate data compressed with {}: {} bytes to {} bytes, ratio {}, {} bytes saved",
+				Context.intermediateCodec, raw, stored,
+				String.format("%.2f", stored == 0 ? 1.0 : (double) raw / stored), raw - stored);
+	}
+
 	/**
 	 * Method for behavior when a channel read is complete.
 	 */
@@ -156,7 +200,9 @@ public class SortClientHandler extends ChannelInboundHandlerAdapter{
 	 */
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-		cause.printStackTrace();
-		ctx.close();
+		SortClient.LOG.error("Phase {} failed", ClientMain.CURRENT_OPCODE, cause);
+		// the server marks the job as failed, the client is closed once it knows
+		ctx.writeAndFlush(new MessageHandler(ClientMain.CURRENT_OPCODE, String.valueOf(cause), FAILURE_STATUS))
+				.addListener(ChannelFutureListener.CLOSE);
 	}
 }
\ No newline at end of file
@@ -3,17 +3,17 @@ package com.net;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Queue;
 
 import org.apache.commons.lang3.StringUtils;
 
 import com.aws.AWSManager;
+import com.main.Context;
 import com.main.ServerMain;
 import com.sort.SampleSort;
 import com.utils.MessageHandler;
@@ -51,8 +51,14 @@ public class SortServerHandler extends ChannelInboundHandlerAdapter{
 	static Map<Integer, HashSet<String>> stateMap = new HashMap<Integer, HashSet<String>>();
 	static Queue<String> filenameQueue;   
 	static int shutDownCount = 0;
-	static ArrayList<String> sampleList = new ArrayList<String>();
-	static String pivots;
+	// Samples and partition sizes sent by every client, keyed like stateMap, so that the messages a client
+	// sends again while it waits are not counted twice
+	static Map<String, String> sampleMap = new LinkedHashMap<String, String>();
+	static String samples;
+	static Map<String, String> partitionSizeMap = new LinkedHashMap<String, String>();
+	static long[] partitionSizes = new long[0];
+	// Bytes of intermediate data every client wrote before and after compression, keyed like stateMap
+	static Map<String, String> compressionMap = new LinkedHashMap<String, String>();
 	static Map<String, String> addressMap = new HashMap<String, String>();
 
 	/**
@@ -123,22 +129,33 @@ public class SortServerHandler extends ChannelInboundHandlerAdapter{
 			else if (clientCompletionCode == (worldState - 1)){
 				if (clientCompletionCode == CLIENT_HANDSHAKE_OPCODE){
 					SortClient.LOG.info("ClientId & input/output params received from Client: {}", message.toString());
-					String[] clientMessageArr = clientMessage.split("_");
+					String[] clientMessageArr = MessageHandler.splitFields(clientMessage);
 					String clientId = clientMessageArr[0];
 					ServerMain.INPUT_PATH = clientMessageArr[1];
 					ServerMain.OUTPUT_PATH = clientMessageArr[2];
 					String[] outputPathSplit = ServerMain.OUTPUT_PATH.split("/");
 					ServerMain.OUTPUT_BUCKET = outputPathSplit[2];
 					ServerMain.OUTPUT_FOLDER = StringUtils.join(Arrays.asList(outputPathSplit).subList(3, outputPathSplit.length), "/");
+					if (clientMessageArr.length > 3) {
+						ServerMain.SHUFFLE_MODE = clientMessageArr[3];
+					}
 					if (!addressMap.containsKey(clientMessage)){
-						addressMap.put(clientId, counter + "\t" + ctx.channel().remoteAddress().toString());
+						String shufflePort = clientMessageArr.length > 4 ? clientMessageArr[4] : "0";
+						addressMap.put(clientId, counter + "\t" + ctx.channel().remoteAddress().toString() + "\t" + shufflePort);
 						counter += 1;
 					}
 				}
 				else if (clientCompletionCode == SORT_READ_AND_SAMPLE_DATA_OPCODE){
-					//Store all samples in a set
-					sampleList.add(clientMessage);
-					Collections.sort(sampleList, String.CASE_INSENSITIVE_ORDER);
+					// Store the samples of every client once
+					if (!sampleMap.containsKey(ctx.channel().remoteAddress().toString())) {
+						sampleMap.put(ctx.channel().remoteAddress().toString(), clientMessage);
+					}
+				}
+				else if (clientCompletionCode == SORT_PARTITION_AND_UPLOAD_DATA_OPCODE){
+					// Store the number of records every client sent to every partition once
+					if (!partitionSizeMap.containsKey(ctx.channel().remoteAddress().toString())) {
+						partitionSizeMap.put(ctx.channel().remoteAddress().toString(), clientMessage);
+					}
 				}
 				if (stateMap.containsKey(clientCompletionCode)){
 					// Atleast one another client has also finished this step.
@@ -150,11 +167,18 @@ public class SortServerHandler extends ChannelInboundHandlerAdapter{
 						// All clients have completed this step.
 						// Increment World State and Proceed with next step
 						if (clientCompletionCode == SORT_READ_AND_SAMPLE_DATA_OPCODE) {
-							// Samples from all clients received, Find pivots.
-							String samples = StringUtils.join(sampleList, ",");
-							pivots = SampleSort.fetchPivotsFromSamples(samples);
+							// Samples from all clients received, every client finds the pivots from all of them.
+							samples = StringUtils.join(sampleMap.values(), SampleSort.SAMPLE_SEPARATOR);
 							worldState += 1;
 						}
+						else if (clientCompletionCode == SORT_PARTITION_AND_UPLOAD_DATA_OPCODE) {
+							sumPartitionSizes();
+							logPartitionImbalance();
+						}
+						else if (clientCompletionCode == MAP_OPCODE && Context.HASH_SHUFFLE.equals(ServerMain.SHUFFLE_MODE)) {
+							// Map output is already hash partitioned, skip sampling, pivots and partitioning.
+							worldState += SORT_MERGE_PARTITION_OPCODE - SORT_READ_AND_SAMPLE_DATA_OPCODE;
+						}
 						worldState += 1;
 						SortServer.LOG.info("Client {} has changed World State. Client Message: {} , new WorldState: {}", 
 								ctx.channel().remoteAddress(), msg, worldState.toString());
@@ -181,6 +205,60 @@ public class SortServerHandler extends ChannelInboundHandlerAdapter{
 		}
 	}
 
+	/**
+	 * Method to add up the number of records every client sent to every partition.
+	 */
+	private void sumPartitionSizes() {
+		partitionSizes = new long[0];
+		for (String clientSizes : partitionSizeMap.values()) {
+			String[] sizes = clientSizes.split(",");
+			if (partitionSizes.length < sizes.length) {
+				partitionSizes = Arrays.copyOf(partitionSizes, sizes.length);
+			}
+			for (int i = 0; i < sizes.length; i++) {
+				partitionSizes[i] += Long.parseLong(sizes[i]);
+			}
+		}
+	}
+
+	/**
+	 * Method to log the number of records in every partition, and how far the largest partition is above the mean.
+	 */
+	private void logPartitionImbalance() {
+		long total = 0;
+		long max = 0;
+		for (long size : partitionSizes) {
+			total += size;
+			max = Math.max(max, size);
+		}
+		double mean = partitionSizes.length == 0 ? 0 : (double) total / partitionSizes.length;
+		SortServer.LOG.info("Records per partition: {}, Imbalance (max/mean): {}", Arrays.toString(partitionSizes),
+				mean == 0 ? 1.0 : max / mean);
+	}
+
+	/**
+	 * Method to log how much the intermediate codec compressed the intermediate files of the whole job,
+	 * from the bytes every client wrote before and after compression.
+	 */
+	private void logCompression() {
+		long raw = 0;
+		long stored = 0;
+		for (String clientBytes : compressionMap.values()) {
+			String[] fields = MessageHandler.splitFields(clientBytes);
+			if (fields.length < 2) {
+				continue;
+			}
+			raw += Long.parseLong(fields[0]);
+			stored += Long.parseLong(fields[1]);
+		}
+		if (raw == 0) {
+			return;
+		}
+		SortServer.LOG.info("Intermediate data compressed on {} clients: {} bytes to {} bytes, ratio {}, {} bytes saved",
+				compressionMap.size(), raw, stored, String.format("%.2f", stored == 0 ? 1.0 : (double) raw / stored),
+				raw - stored);
+	}
+
 	/**
 	 * Method to execute next step.
 	 * @param ctx
@@ -197,12 +275,17 @@ public class SortServerHandler extends ChannelInboundHandlerAdapter{
 			break;
 		case MAP_OPCODE:
 			SortServer.LOG.info("Map Complete. Code: {}, Message: {}", code, message); 			
-			result = new MessageHandler(SORT_READ_AND_SAMPLE_DATA_OPCODE, "Start Sort", SUCCESS_STATUS);
+			if (Context.HASH_SHUFFLE.equals(ServerMain.SHUFFLE_MODE)) {
+				result = new MessageHandler(SORT_MERGE_PARTITION_OPCODE, "Merge Partitions", SUCCESS_STATUS);
+			}
+			else {
+				result = new MessageHandler(SORT_READ_AND_SAMPLE_DATA_OPCODE, "Start Sort", SUCCESS_STATUS);
+			}
 			ctx.writeAndFlush(result);
 			break;
 		case SORT_READ_AND_SAMPLE_DATA_OPCODE: 
-			SortServer.LOG.info("Code: {}, Sending the client pivots: {}", code, pivots);	
-			result = new MessageHandler(SORT_PARTITION_AND_UPLOAD_DATA_OPCODE, pivots, SUCCESS_STATUS);
+			SortServer.LOG.info("Code: {}, Sending the client samples: {}", code, sampleMap.size());	
+			result = new MessageHandler(SORT_PARTITION_AND_UPLOAD_DATA_OPCODE, samples, SUCCESS_STATUS);
 			ctx.writeAndFlush(result);
 			break;
 		case SORT_PARTITION_AND_UPLOAD_DATA_OPCODE: 
@@ -217,11 +300,15 @@ public class SortServerHandler extends ChannelInboundHandlerAdapter{
 			break;			
 		case CLIENT_EXIT_OPCODE:
 			SortServer.LOG.info("Code: {}, Client is requesting shutdown", code);
+			if (!compressionMap.containsKey(ctx.channel().remoteAddress().toString())) {
+				compressionMap.put(ctx.channel().remoteAddress().toString(), message);
+			}
 			SortServer.LOG.info("Closing client: {}", ctx.channel().remoteAddress());
 			ctx.close();
 			shutDownCount += 1;
 			if (shutDownCount == ServerMain.N_INSTANCES){
 				// All clients should have exited					
+				logCompression();
 				try {
 					FileWriter fw = new FileWriter("_SUCCESS", false);
 					fw.close();
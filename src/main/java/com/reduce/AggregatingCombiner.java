@@ -0,0 +1,51 @@
+package com.reduce;
+
+import java.io.IOException;
+
+import com.main.Context;
+
+/**
+ * Combiner that accumulates the values of every key with an Aggregator and emits one partial result per
+ * key, for the reducer using the same kind of Aggregator.
+ */
+public abstract class AggregatingCombiner extends Combiner {
+
+	// created on first use, subclasses may not be initialized yet when this class is
+	private Aggregator aggregator;
+
+	/**
+	 * @return a new aggregator, reused for every key combined by this combiner
+	 */
+	protected abstract Aggregator newAggregator();
+
+	/**
+	 * @return the aggregator of this combiner, creating it on first use
+	 */
+	private Aggregator getAggregator() {
+		if (aggregator == null) {
+			aggregator = newAggregator();
+		}
+		return aggregator;
+	}
+
+	@Override
+	public void combine(String key, Iterable<String> value, Context context) {
+		Aggregator aggregator = getAggregator();
+		aggregator.reset();
+		for (String s : value) {
+			byte[] bytes = s.getBytes(Aggregator.CHARSET);
+			aggregator.add(bytes, 0, bytes.length);
+		}
+		context.write(key, aggregator.getPartial());
+	}
+
+	@Override
+	public void combine(GroupingIterator group, Context context) throws IOException {
+		Aggregator aggregator = getAggregator();
+		aggregator.reset();
+		while (group.nextValue()) {
+			aggregator.add(group.getValueBytes(), 0, group.getValueLength());
+		}
+		context.write(group.getKey(), aggregator.getPartial());
+	}
+}
@@ -0,0 +1,51 @@
+package com.reduce;
+
+import java.io.IOException;
+
+import com.main.Context;
+
+/**
+ * Reducer that accumulates the values of every key with an Aggregator, parsing them from their bytes
+ * without decoding them to Strings, and emits one result per key.
+ */
+public abstract class AggregatingReducer extends Reducer {
+
+	// created on first use, subclasses may not be initialized yet when this class is
+	private Aggregator aggregator;
+
+	/**
+	 * @return a new aggregator, reused for every key reduced by this reducer
+	 */
+	protected abstract Aggregator newAggregator();
+
+	/**
+	 * @return the aggregator of this reducer, creating it on first use
+	 */
+	private Aggregator getAggregator() {
+		if (aggregator == null) {
+			aggregator = newAggregator();
+		}
+		return aggregator;
+	}
+
+	@Override
+	public void reduce(String key, Iterable<String> value, Context context) {
+		Aggregator aggregator = getAggregator();
+		aggregator.reset();
+		for (String s : value) {
+			byte[] bytes = s.getBytes(Aggregator.CHARSET);
+			aggregator.add(bytes, 0, bytes.length);
+		}
+		context.write(key, aggregator.getResult());
+	}
+
+	@Override
+	public void reduce(GroupingIterator group, Context context) throws IOException {
+		Aggregator aggregator = getAggregator();
+		aggregator.reset();
+		while (group.nextValue()) {
+			aggregator.add(group.getValueBytes(), 0, group.getValueLength());
+		}
+		context.write(group.getKey(), aggregator.getResult());
+	}
+}
@@ -0,0 +1,477 @@
+package com.reduce;
+
+import java.util.Arrays;
+
+/**
+ * Built-in reducers and combiners for the common aggregations over numeric values: count, sum, min, max,
+ * mean and histogram. Values are parsed from the bytes of the records, without decoding them to Strings.
+ * A job registers them like any other reducer or combiner, e.g.
+ * context.setReducerClass(Aggregations.LongSumReducer.class). The combiner of an aggregation must be used
+ * with the reducer of the same aggregation.
+ */
+public final class Aggregations {
+
+	private Aggregations() {
+	}
+
+	/**
+	 * Counts the values of a key, whatever they are.
+	 */
+	public static class CountAggregator extends Aggregator {
+		private long count;
+
+		@Override
+		public void reset() {
+			count = 0;
+		}
+
+		@Override
+		public void add(byte[] bytes, int offset, int length) {
+			if (isPartial(bytes, offset, length)) {
+				count += parseLong(bytes, offset + 1, length - 1);
+			}
+			else {
+				count++;
+			}
+		}
+
+		@Override
+		public String getResult() {
+			return Long.toString(count);
+		}
+
+		@Override
+		public String getPartial() {
+			return PARTIAL + Long.toString(count);
+		}
+	}
+
+	/**
+	 * Sums values parsed as longs.
+	 */
+	public static class LongSumAggregator extends Aggregator {
+		private long sum;
+
+		@Override
+		public void reset() {
+			sum = 0;
+		}
+
+		@Override
+		public void add(byte[] bytes, int offset, int length) {
+			sum += parseLong(bytes, offset, length);
+		}
+
+		@Override
+		public String getResult() {
+			return Long.toString(sum);
+		}
+	}
+
+	/**
+	 * Sums values parsed as doubles.
+	 */
+	public static class DoubleSumAggregator extends Aggregator {
+		private double sum;
+
+		@Override
+		public void reset() {
+			sum = 0;
+		}
+
+		@Override
+		public void add(byte[] bytes, int offset, int length) {
+			sum += parseDouble(bytes, offset, length);
+		}
+
+		@Override
+		public String getResult() {
+			return Double.toString(sum);
+		}
+	}
+
+	/**
+	 * Keeps the minimum or the maximum of values parsed as longs.
+	 */
+	public static class LongExtremeAggregator extends Aggregator {
+		private boolean max;
+		private long extreme;
+
+		/**
+		 * @param max true to keep the maximum, false for the minimum
+		 */
+		public LongExtremeAggregator(boolean max) {
+			this.max = max;
+		}
+
+		@Override
+		public void reset() {
+			extreme = max ? Long.MIN_VALUE : Long.MAX_VALUE;
+		}
+
+		@Override
+		public void add(byte[] bytes, int offset, int length) {
+			long value = parseLong(bytes, offset, length);
+			extreme = max ? Math.max(extreme, value) : Math.min(extreme, value);
+		}
+
+		@Override
+		public String getResult() {
+			return Long.toString(extreme);
+		}
+	}
+
+	/**
+	 * Keeps the minimum or the maximum of values parsed as doubles.
+	 */
+	public static class DoubleExtremeAggregator extends Aggregator {
+		private boolean max;
+		private double extreme;
+
+		/**
+		 * @param max true to keep the maximum, false for the minimum
+		 */
+		public DoubleExtremeAggregator(boolean max) {
+			this.max = max;
+		}
+
+		@Override
+		public void reset() {
+			extreme = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		}
+
+		@Override
+		public void add(byte[] bytes, int offset, int length) {
+			double value = parseDouble(bytes, offset, length);
+			extreme = max ? Math.max(extreme, value) : Math.min(extreme, value);
+		}
+
+		@Override
+		public String getResult() {
+			return Double.toString(extreme);
+		}
+	}
+
+	/**
+	 * Averages values parsed as doubles. Its partial result is the sum and the count of the values, as
+	 * PARTIAL sum,count.
+	 */
+	public static class MeanAggregator extends Aggregator {
+		private double sum;
+		private long count;
+
+		@Override
+		public void reset() {
+			sum = 0;
+			count = 0;
+		}
+
+		@Override
+		public void add(byte[] bytes, int offset, int length) {
+			if (isPartial(bytes, offset, length)) {
+				int end = offset + length;
+				int comma = offset + 1;
+				while (comma < end && bytes[comma] != ',') {
+					comma++;
+				}
+				sum += parseDouble(bytes, offset + 1, comma - offset - 1);
+				count += parseLong(bytes, comma + 1, end - comma - 1);
+			}
+			else {
+				sum += parseDouble(bytes, offset, length);
+				count++;
+			}
+		}
+
+		@Override
+		public String getResult() {
+			return Double.toString(count == 0 ? 0 : sum / count);
+		}
+
+		@Override
+		public String getPartial() {
+			return PARTIAL + Double.toString(sum) + "," + Long.toString(count);
+		}
+	}
+
+	/**
+	 * Counts values parsed as longs in buckets of the given width. The result lists the non-empty buckets in
+	 * order, as lower:count pairs separated by commas, the lower bound of a bucket being a multiple of the
+	 * width. Its partial result is the same list after PARTIAL.
+	 */
+	public static class HistogramAggregator extends Aggregator {
+		private long width;
+		// Open addressing table of bucket lower bounds and counts, a count of 0 marking a free slot
+		private long[] lowers = new long[16];
+		private long[] counts = new long[16];
+		private int size;
+
+		/**
+		 * @param width width of the buckets
+		 */
+		public HistogramAggregator(long width) {
+			if (width <= 0) {
+				throw new IllegalArgumentException("Bucket width must be positive: " + width);
+			}
+			this.width = width;
+		}
+
+		@Override
+		public void reset() {
+			if (size > 0) {
+				Arrays.fill(counts, 0);
+				size = 0;
+			}
+		}
+
+		@Override
+		public void add(byte[] bytes, int offset, int length) {
+			if (!isPartial(bytes, offset, length)) {
+				long value = parseLong(bytes, offset, length);
+				long bucket = value / width;
+				if (value % width != 0 && value < 0) {
+					bucket--;
+				}
+				increment(bucket * width, 1);
+				return;
+			}
+			int end = offset + length;
+			int start = offset + 1;
+			while (start < end) {
+				int colon = start;
+				while (bytes[colon] != ':') {
+					colon++;
+				}
+				int comma = colon + 1;
+				while (comma < end && bytes[comma] != ',') {
+					comma++;
+				}
+				increment(parseLong(bytes, start, colon - start), parseLong(bytes, colon + 1, comma - colon - 1));
+				start = comma + 1;
+			}
+		}
+
+		/**
+		 * Method to add to the count of a bucket.
+		 * @param lower
+		 * @param count
+		 */
+		private void increment(long lower, long count) {
+			if (2 * (size + 1) > lowers.length) {
+				grow();
+			}
+			int slot = find(lower, lowers, counts);
+			if (counts[slot] == 0) {
+				lowers[slot] = lower;
+				size++;
+			}
+			counts[slot] += count;
+		}
+
+		/**
+		 * Method to find the slot of a bucket, or the free slot where it goes.
+		 * @param lower
+		 * @param lowers
+		 * @param counts
+		 * @return
+		 */
+		private static int find(long lower, long[] lowers, long[] counts) {
+			int mask = lowers.length - 1;
+			long hash = lower * 0x9E3779B97F4A7C15L;
+			int slot = (int) (hash ^ (hash >>> 32)) & mask;
+			while (counts[slot] != 0 && lowers[slot] != lower) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		/**
+		 * Method to double the capacity of the table.
+		 */
+		private void grow() {
+			long[] newLowers = new long[lowers.length * 2];
+			long[] newCounts = new long[counts.length * 2];
+			for (int i = 0; i < lowers.length; i++) {
+				if (counts[i] != 0) {
+					int slot = find(lowers[i], newLowers, newCounts);
+					newLowers[slot] = lowers[i];
+					newCounts[slot] = counts[i];
+				}
+			}
+			lowers = newLowers;
+			counts = newCounts;
+		}
+
+		@Override
+		public String getResult() {
+			long[] sorted = new long[size];
+			int n = 0;
+			for (int i = 0; i < lowers.length; i++) {
+				if (counts[i] != 0) {
+					sorted[n++] = lowers[i];
+				}
+			}
+			Arrays.sort(sorted);
+			StringBuilder result = new StringBuilder();
+			for (int i = 0; i < n; i++) {
+				if (i > 0) {
+					result.append(',');
+				}
+				result.append(sorted[i]).append(':').append(counts[find(sorted[i], lowers, counts)]);
+			}
+			return result.toString();
+		}
+
+		@Override
+		public String getPartial() {
+			return PARTIAL + getResult();
+		}
+	}
+
+	public static class CountReducer extends AggregatingReducer {
+		@Override
+		protected Aggregator newAggregator() {
+			return new CountAggregator();
+		}
+	}
+
+	public static class CountCombiner extends AggregatingCombiner {
+		@Override
+		protected Aggregator newAggregator() {
+			return new CountAggregator();
+		}
+	}
+
+	public static class LongSumReducer extends AggregatingReducer {
+		@Override
+		protected Aggregator newAggregator() {
+			return new LongSumAggregator();
+		}
+	}
+
+	public static class LongSumCombiner extends AggregatingCombiner {
+		@Override
+		protected Aggregator newAggregator() {
+			return new LongSumAggregator();
+		}
+	}
+
+	public static class DoubleSumReducer extends AggregatingReducer {
+		@Override
+		protected Aggregator newAggregator() {
+			return new DoubleSumAggregator();
+		}
+	}
+
+	public static class DoubleSumCombiner extends AggregatingCombiner {
+		@Override
+		protected Aggregator newAggregator() {
+			return new DoubleSumAggregator();
+		}
+	}
+
+	public static class LongMinReducer extends AggregatingReducer {
+		@Override
+		protected Aggregator newAggregator() {
+			return new LongExtremeAggregator(false);
+		}
+	}
+
+	public static class LongMinCombiner extends AggregatingCombiner {
+		@Override
+		protected Aggregator newAggregator() {
+			return new LongExtremeAggregator(false);
+		}
+	}
+
+	public static class LongMaxReducer extends AggregatingReducer {
+		@Override
+		protected Aggregator newAggregator() {
+			return new LongExtremeAggregator(true);
+		}
+	}
+
+	public static class LongMaxCombiner extends AggregatingCombiner {
+		@Override
+		protected Aggregator newAggregator() {
+			return new LongExtremeAggregator(true);
+		}
+	}
+
+	public static class DoubleMinReducer extends AggregatingReducer {
+		@Override
+		protected Aggregator newAggregator() {
+			return new DoubleExtremeAggregator(false);
+		}
+	}
+
+	public static class DoubleMinCombiner extends AggregatingCombiner {
+		@Override
+		protected Aggregator newAggregator() {
+			return new DoubleExtremeAggregator(false);
+		}
+	}
+
+	public static class DoubleMaxReducer extends AggregatingReducer {
+		@Override
+		protected Aggregator newAggregator() {
+			return new DoubleExtremeAggregator(true);
+		}
+	}
+
+	public static class DoubleMaxCombiner extends AggregatingCombiner {
+		@Override
+		protected Aggregator newAggregator() {
+			return new DoubleExtremeAggregator(true);
+		}
+	}
+
+	public static class MeanReducer extends AggregatingReducer {
+		@Override
+		protected Aggregator newAggregator() {
+			return new MeanAggregator();
+		}
+	}
+
+	public static class MeanCombiner extends AggregatingCombiner {
+		@Override
+		protected Aggregator newAggregator() {
+			return new MeanAggregator();
+		}
+	}
+
+	/**
+	 * Histogram in buckets of width 1. Subclass it and override getBucketWidth for other widths; the
+	 * combiner, if any, must use the same width.
+	 */
+	public static class HistogramReducer extends AggregatingReducer {
+		@Override
+		protected Aggregator newAggregator() {
+			return new HistogramAggregator(getBucketWidth());
+		}
+
+		/**
+		 * @return width of the buckets
+		 */
+		protected long getBucketWidth() {
+			return 1;
+		}
+	}
+
+	/**
+	 * Combiner of HistogramReducer, with the same bucket width.
+	 */
+	public static class HistogramCombiner extends AggregatingCombiner {
+		@Override
+		protected Aggregator newAggregator() {
+			return new HistogramAggregator(getBucketWidth());
+		}
+
+		/**
+		 * @return width of the buckets
+		 */
+		protected long getBucketWidth() {
+			return 1;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.reduce;
+
+import java.nio.charset.Charset;
+
+/**
+ * Accumulates the values of a key in primitive fields, parsing every value from its bytes. An aggregator
+ * is reset and reused for every key. Combiners emit partial results, which reducers merge with the
+ * values they receive; a partial result that is not itself a plain value starts with PARTIAL.
+ */
+public abstract class Aggregator {
+
+	// First character of a partial result that is not a plain value
+	public static final char PARTIAL = '\u0001';
+	static final Charset CHARSET = Charset.forName("UTF-8");
+	// Powers of ten a decimal mantissa can be divided by exactly
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Method to start accumulating the values of a new key.
+	 */
+	public abstract void reset();
+
+	/**
+	 * Method to add a value, or a partial result of a combiner.
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 */
+	public abstract void add(byte[] bytes, int offset, int length);
+
+	/**
+	 * @return the result for the values added since the last reset
+	 */
+	public abstract String getResult();
+
+	/**
+	 * @return the partial result a combiner emits, to be added again by a reducer; the result by default
+	 */
+	public String getPartial() {
+		return getResult();
+	}
+
+	/**
+	 * Method to check whether a value is a partial result starting with PARTIAL.
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	static boolean isPartial(byte[] bytes, int offset, int length) {
+		return length > 0 && bytes[offset] == PARTIAL;
+	}
+
+	/**
+	 * Method to parse a decimal long from ASCII digits, with an optional sign and surrounding whitespace.
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return
+	 * @throws NumberFormatException
+	 */
+	public static long parseLong(byte[] bytes, int offset, int length) {
+		int end = offset + length;
+		int i = offset;
+		while (i < end && bytes[i] <= ' ') {
+			i++;
+		}
+		while (end > i && bytes[end - 1] <= ' ') {
+			end--;
+		}
+		boolean negative = false;
+		if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+			negative = bytes[i] == '-';
+			i++;
+		}
+		if (i == end) {
+			throw new NumberFormatException("Not a number: " + new String(bytes, offset, length, CHARSET));
+		}
+		// accumulated negatively, so that Long.MIN_VALUE can be parsed
+		long result = 0;
+		for (; i < end; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+				throw new NumberFormatException("Not a long: " + new String(bytes, offset, length, CHARSET));
+			}
+			result = result * 10 - digit;
+		}
+		if (!negative && result == Long.MIN_VALUE) {
+			throw new NumberFormatException("Not a long: " + new String(bytes, offset, length, CHARSET));
+		}
+		return negative ? result : -result;
+	}
+
+	/**
+	 * Method to parse a double. Plain decimals of up to 15 digits are parsed from the bytes, exactly; other
+	 * forms, such as exponents, fall back to Double.parseDouble.
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return
+	 * @throws NumberFormatException
+	 */
+	public static double parseDouble(byte[] bytes, int offset, int length) {
+		int end = offset + length;
+		int i = offset;
+		while (i < end && bytes[i] <= ' ') {
+			i++;
+		}
+		while (end > i && bytes[end - 1] <= ' ') {
+			end--;
+		}
+		boolean negative = false;
+		if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+			negative = bytes[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean point = false;
+		boolean simple = i < end;
+		for (; i < end && simple; i++) {
+			byte b = bytes[i];
+			if (b >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (point) {
+					scale++;
+				}
+			}
+			else if (b == '.' && !point) {
+				point = true;
+			}
+			else {
+				simple = false;
+			}
+		}
+		// up to 15 digits fit exactly in a double, and dividing by an exact power of ten rounds correctly
+		if (simple && digits > 0 && digits <= 15) {
+			double result = mantissa / POWERS_OF_TEN[scale];
+			return negative ? -result : result;
+		}
+		return Double.parseDouble(new String(bytes, offset, length, CHARSET).trim());
+	}
+}
@@ -0,0 +1,24 @@
+package com.reduce;
+
+import java.io.IOException;
+
+import com.main.Context;
+/**
+ * Provides an abstraction of Combiner, which runs over the map output of a node
+ * before it is uploaded
+ */
+public abstract class Combiner {
+	public abstract void combine(String key, Iterable<String> value, Context context);
+
+	/**
+	 * Method called by the framework for every key of a file being combined. Combiners that work on the
+	 * bytes of the values override it, by default the values are decoded and handed to
+	 * combine(String, Iterable, Context).
+	 * @param group positioned on the key, with its values not yet read
+	 * @param context
+	 * @throws IOException
+	 */
+	public void combine(GroupingIterator group, Context context) throws IOException {
+		combine(group.getKey(), group.getValues(), context);
+	}
+}
@@ -0,0 +1,209 @@
+package com.reduce;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.sort.KeyComparator;
+import com.utils.RecordSource;
+import com.utils.TextView;
+
+/**
+ * Groups the records of a source sorted by key. The values of every key are streamed from the source as
+ * they are iterated, so that no group has to fit in memory. Values a reducer does not iterate are skipped
+ * when moving to the next key. With a grouping comparator, consecutive keys of the same group form a single
+ * group, under the first key of the group, with the values in the sort order of their keys. A combiner
+ * groups by exact key instead, its partial values are grouped by the reducer.
+ * The values can also be read as bytes or through a reused view, with nextValue(), without decoding them
+ * to Strings.
+ */
+public class GroupingIterator {
+
+	private RecordSource source;
+	// whether the source is positioned on a record not yet returned
+	private boolean hasRecord;
+	private String key;
+	private ValueIterator values;
+	private TextView valueView = new TextView();
+	// whether only equal keys form a group, ignoring the grouping comparator
+	private boolean exactKeys;
+
+	/**
+	 * @param source records sorted by key
+	 * @throws IOException
+	 */
+	public GroupingIterator(RecordSource source) throws IOException {
+		this(source, false);
+	}
+
+	/**
+	 * @param source records sorted by key
+	 * @param exactKeys whether only equal keys form a group, as for a combiner
+	 * @throws IOException
+	 */
+	public GroupingIterator(RecordSource source, boolean exactKeys) throws IOException {
+		this.source = source;
+		this.exactKeys = exactKeys;
+		this.hasRecord = source.next();
+	}
+
+	/**
+	 * Method to check whether a key belongs to the group of the current key.
+	 * @param other
+	 * @return
+	 */
+	private boolean inGroup(String other) {
+		return exactKeys ? other.equals(key) : KeyComparator.sameGroup(other, key);
+	}
+
+	/**
+	 * Method to move to the next key.
+	 * @return false when there are no more keys
+	 * @throws IOException
+	 */
+	public boolean nextKey() throws IOException {
+		if (values != null) {
+			values.skip();
+		}
+		if (!hasRecord) {
+			key = null;
+			values = null;
+			return false;
+		}
+		key = source.getKey();
+		values = new ValueIterator();
+		return true;
+	}
+
+	/**
+	 * @return the current key
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the values of the current key, which can be iterated once
+	 */
+	public Iterable<String> getValues() {
+		final ValueIterator iterator = values;
+		return new Iterable<String>() {
+			@Override
+			public Iterator<String> iterator() {
+				return iterator;
+			}
+		};
+	}
+
+	/**
+	 * Method to move to the next value of the current key without decoding it, instead of iterating
+	 * getValues(). The bytes of the value stay available until the next call.
+	 * @return false when the current key has no more values
+	 * @throws IOException
+	 */
+	public boolean nextValue() throws IOException {
+		return values != null && values.nextBytes();
+	}
+
+	/**
+	 * @return the UTF-8 bytes of the current value, in a buffer reused for the next value
+	 */
+	public byte[] getValueBytes() {
+		return source.getValueBytes();
+	}
+
+	/**
+	 * @return the number of bytes of the current value
+	 */
+	public int getValueLength() {
+		return source.getValueLength();
+	}
+
+	/**
+	 * @return a view of the current value, reused for every value
+	 */
+	public TextView getValueView() {
+		valueView.set(source.getValueBytes(), 0, source.getValueLength());
+		return valueView;
+	}
+
+	/**
+	 * Iterates the values of the current key, reading ahead one record from the source. A value read as
+	 * bytes stays the current record of the source until the next value is asked for.
+	 */
+	private class ValueIterator implements Iterator<String> {
+		private boolean done = false;
+		// whether the current record of the source has been handed out as bytes
+		private boolean pending = false;
+
+		/**
+		 * Method to move past the record handed out as bytes, if any.
+		 * @throws IOException
+		 */
+		private void settle() throws IOException {
+			if (pending) {
+				pending = false;
+				hasRecord = source.next();
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			try {
+				settle();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			if (!done && !(hasRecord && inGroup(source.getKey()))) {
+				done = true;
+			}
+			return !done;
+		}
+
+		/**
+		 * Method to make the next value of the key the current record of the source.
+		 * @return false when the key has no more values
+		 * @throws IOException
+		 */
+		private boolean nextBytes() throws IOException {
+			settle();
+			if (!done && hasRecord && inGroup(source.getKey())) {
+				pending = true;
+				return true;
+			}
+			done = true;
+			return false;
+		}
+
+		@Override
+		public String next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			String value = source.getValue();
+			try {
+				hasRecord = source.next();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return value;
+		}
+
+		/**
+		 * Method to read past the values that were not iterated.
+		 * @throws IOException
+		 */
+		private void skip() throws IOException {
+			settle();
+			while (!done && hasRecord && inGroup(source.getKey())) {
+				hasRecord = source.next();
+			}
+			done = true;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
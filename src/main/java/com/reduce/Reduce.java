@@ -1,38 +1,121 @@
 package com.reduce;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.aws.AWSManager;
-import com.main.ClientMain;
 import com.main.Context;
+import com.sort.RunMerger;
 import com.utils.GenericFactory;
+import com.utils.RecordSource;
 
 /**
  * Provides an implementation of Reduce Task
  */
 public class Reduce {
+	private static final String OUTPUT_NAME = "abs-final-output-%d-%03d";
+
 	public AWSManager AWSConnect;
-	Reducer reducer; 
-	public Context context = new Context();
 
 	public Reduce() throws IllegalAccessException, InstantiationException {
 		this.AWSConnect = new AWSManager();
-		this.reducer = GenericFactory.getInstance(Context.reducer);
+		// Fail early if the reducer cannot be instantiated
+		GenericFactory.getInstance(Context.reducer);
+	}
+	/**
+	 * Implementation of reduce method for Reduce Task. Every key range of the partition of this node is
+	 * reduced on its own thread, with its own Reducer and Context, into its own output file. Output files
+	 * are uploaded while they are written and are complete in S3 when their Context is closed.
+	 * @param clientNum
+	 * @param ranges consecutive key ranges, each the sorted files holding its records
+	 * @throws InterruptedException
+	 * @throws IOException if a key range cannot be reduced, once every other range is done
+	 */
+	public void reduce(int clientNum, List<List<String>> ranges) throws InterruptedException, IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(Context.reduceThreads, ranges.size())));
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		for (int i = 0; i < ranges.size(); i++) {
+			results.add(pool.submit(new ReduceTask(ranges.get(i), String.format(OUTPUT_NAME, clientNum, i))));
+		}
+		pool.shutdown();
+		IOException failure = null;
+		for (int i = 0; i < results.size(); i++) {
+			try {
+				results.get(i).get();
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = new IOException("Reducing key range " + i + " failed", e.getCause());
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
 	}
+
 	/**
-	 * Implementation of reduce method for Reduce Task.
+	 * Method to reduce the records of a source into a single output file, on the calling thread, as they
+	 * are read from the source.
 	 * @param clientNum
-	 * @throws FileNotFoundException
+	 * @param source records of this node, sorted by key
+	 * @throws IOException
+	 */
+	public void reduce(int clientNum, RecordSource source) throws IOException {
+		reduceSource(source, String.format(OUTPUT_NAME, clientNum, 0));
+	}
+
+	/**
+	 * Method to reduce the records of a source with a new Reducer and Context. The output is complete in S3
+	 * once the source is reduced, it is discarded if the reducer fails.
+	 * @param source
+	 * @param outputName
+	 * @throws IOException
+	 */
+	private void reduceSource(RecordSource source, String outputName) throws IOException {
+		Reducer reducer;
+		try {
+			reducer = GenericFactory.getInstance(Context.reducer);
+		} catch (IllegalAccessException | InstantiationException e) {
+			throw new IllegalStateException("Cannot instantiate reducer " + Context.reducer.getName(), e);
+		}
+		Context context = new Context();
+		context.setCurrentFile(outputName);
+		try {
+			AWSConnect.reduceKey(source, reducer, context);
+		} catch (Throwable t) {
+			context.abort();
+			throw t;
+		}
+		context.close();
+	}
+
+	/**
+	 * Reduces one key range with its own Reducer and Context.
 	 */
-	public void reduce(int clientNum) throws FileNotFoundException {
-		AWSConnect.reduceKey(clientNum, this.reducer);		
-		File outputDirectory = new File(ClientMain.LOCAL_OUTPUT_PATH);
-		File[] files = outputDirectory.listFiles();
-		for(File f : files) {
-			if (f.getName().startsWith("" + clientNum)){
-				AWSConnect.sendFileToS3(ClientMain.LOCAL_OUTPUT_PATH+"/"+f.getName(), ClientMain.LOCAL_OUTPUT_PATH+"/"+f.getName());	
-			}			
-		}		
+	private class ReduceTask implements Callable<Void> {
+		private List<String> inputFiles;
+		private String outputName;
+
+		public ReduceTask(List<String> inputFiles, String outputName) {
+			this.inputFiles = inputFiles;
+			this.outputName = outputName;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			RunMerger merger = RunMerger.open(inputFiles);
+			try {
+				reduceSource(merger, outputName);
+			} finally {
+				merger.close();
+			}
+			return null;
+		}
 	}
-}
\ No newline at end of file
+}
@@ -1,9 +1,22 @@
 package com.reduce;
 
+import java.io.IOException;
+
 import com.main.Context;
 /**
  * Provides an abstraction of Reducer
  */
 public abstract class Reducer {
 	public abstract void reduce(String key, Iterable<String> value, Context context);
+
+	/**
+	 * Method called by the framework for every key. Reducers that work on the bytes of the values override
+	 * it, by default the values are decoded and handed to reduce(String, Iterable, Context).
+	 * @param group positioned on the key, with its values not yet read
+	 * @param context
+	 * @throws IOException
+	 */
+	public void reduce(GroupingIterator group, Context context) throws IOException {
+		reduce(group.getKey(), group.getValues(), context);
+	}
 }
\ No newline at end of file
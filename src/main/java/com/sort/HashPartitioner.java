@@ -0,0 +1,16 @@
+package com.sort;
+
+/**
+ * Assigns keys to reducers by their hash, for jobs that do not need globally ordered output.
+ */
+public class HashPartitioner {
+
+	/**
+	 * @param key
+	 * @param numPartitions
+	 * @return the partition of the key
+	 */
+	public static int getPartition(String key, int numPartitions) {
+		return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+	}
+}
@@ -0,0 +1,116 @@
+package com.sort;
+
+import java.util.Comparator;
+
+import com.main.Context;
+
+/**
+ * Sort order of keys: case insensitive, with ties between keys that differ only in case
+ * broken by their case sensitive order, so that equal keys always end up next to each other.
+ * A key can also be normalized once to an 8 byte prefix, the UTF-8 bytes of its case folded characters,
+ * which orders most pairs of keys without comparing their characters.
+ * The static methods follow the sort and grouping comparators set on Context instead, when a job sets them.
+ */
+public class KeyComparator implements Comparator<String> {
+
+	public static final KeyComparator INSTANCE = new KeyComparator();
+
+	// Prefix of the keys that must always be compared in full
+	public static final long NO_PREFIX = 0L;
+
+	@Override
+	public int compare(String s1, String s2) {
+		int result = s1.compareToIgnoreCase(s2);
+		if (result == 0) {
+			return s1.compareTo(s2);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the sort order of the job, the sort comparator set on Context or else this order
+	 */
+	public static Comparator<String> getSortOrder() {
+		return Context.sortComparator != null ? Context.sortComparator : INSTANCE;
+	}
+
+	/**
+	 * Method to check whether two keys are reduced together, as decided by the grouping comparator set on
+	 * Context, or else by equality.
+	 * @param s1
+	 * @param s2
+	 * @return
+	 */
+	public static boolean sameGroup(String s1, String s2) {
+		if (Context.groupingComparator != null) {
+			return Context.groupingComparator.compare(s1, s2) == 0;
+		}
+		return s1.equals(s2);
+	}
+
+	/**
+	 * Method to compare two keys by their prefixes, falling back to the full keys when the prefixes tie.
+	 * Keys are compared in full, and prefixes ignored, when a job sets its own sort comparator.
+	 * @param s1
+	 * @param prefix1 prefix of s1
+	 * @param s2
+	 * @param prefix2 prefix of s2
+	 * @return
+	 */
+	public static int compare(String s1, long prefix1, String s2, long prefix2) {
+		if (Context.sortComparator != null) {
+			return Context.sortComparator.compare(s1, s2);
+		}
+		if (prefix1 != prefix2 && prefix1 != NO_PREFIX && prefix2 != NO_PREFIX) {
+			// unsigned comparison
+			return prefix1 + Long.MIN_VALUE < prefix2 + Long.MIN_VALUE ? -1 : 1;
+		}
+		return INSTANCE.compare(s1, s2);
+	}
+
+	/**
+	 * Method to normalize a key to its prefix: the first 8 UTF-8 bytes of its characters folded as by
+	 * compareToIgnoreCase, padded with zero bytes. Unsigned order of prefixes agrees with the order of keys
+	 * whenever the prefixes differ. Keys with a surrogate among the encoded characters get NO_PREFIX, since
+	 * compareToIgnoreCase may compare surrogate pairs as code points. All keys get NO_PREFIX when a job sets
+	 * its own sort comparator.
+	 * @param key
+	 * @return
+	 */
+	public static long prefix(String key) {
+		if (Context.sortComparator != null) {
+			return NO_PREFIX;
+		}
+		long prefix = 0;
+		int bytes = 0;
+		for (int i = 0; i < key.length() && bytes < 8; i++) {
+			char c = key.charAt(i);
+			if (Character.isSurrogate(c)) {
+				return NO_PREFIX;
+			}
+			c = Character.toLowerCase(Character.toUpperCase(c));
+			if (c < 0x80) {
+				prefix = (prefix << 8) | c;
+				bytes++;
+			}
+			else if (c < 0x800) {
+				prefix = (prefix << 8) | (0xC0 | (c >> 6));
+				if (++bytes < 8) {
+					prefix = (prefix << 8) | (0x80 | (c & 0x3F));
+					bytes++;
+				}
+			}
+			else {
+				prefix = (prefix << 8) | (0xE0 | (c >> 12));
+				if (++bytes < 8) {
+					prefix = (prefix << 8) | (0x80 | ((c >> 6) & 0x3F));
+					if (++bytes < 8) {
+						prefix = (prefix << 8) | (0x80 | (c & 0x3F));
+						bytes++;
+					}
+				}
+			}
+		}
+		return bytes == 0 ? NO_PREFIX : prefix << (8 * (8 - bytes));
+	}
+}
@@ -0,0 +1,171 @@
+package com.sort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.main.Context;
+
+/**
+ * Pivots that split the key space into one range per node, chosen from the samples of all the nodes.
+ * Partition i holds the keys greater than pivot i-1 and not greater than pivot i. With a grouping
+ * comparator, keys are compared to pivots by group, so that a group is never split between partitions.
+ * A hot key, one with at least as many samples as the hot key threshold times an even partition, is given
+ * partitions of its own.
+ * It is repeated as a pivot when it may be spread over several partitions. All the partitions of a
+ * hot key after the first (its owner) hold only that key.
+ */
+public class PartitionPlan {
+
+	private List<String> pivots;
+	// Normalized prefixes of the pivots, see KeyComparator.prefix
+	private long[] prefixes;
+
+	/**
+	 * @param pivots
+	 */
+	public PartitionPlan(List<String> pivots) {
+		this.pivots = pivots;
+		this.prefixes = new long[pivots.size()];
+		for (int i = 0; i < prefixes.length; i++) {
+			prefixes[i] = KeyComparator.prefix(pivots.get(i));
+		}
+	}
+
+	/**
+	 * Method to choose the pivots for the given number of partitions. Pivots are weighted by sample
+	 * frequency, each partition taking a near-equal share of the samples left after the previous pivot.
+	 * @param samples samples of all the nodes, in any order
+	 * @param partitions
+	 * @param hotKeyThreshold size of a hot key, relative to an even partition
+	 * @param splitHotKeys whether a hot key may be spread over several partitions
+	 * @return
+	 */
+	public static PartitionPlan fromSamples(List<String> samples, int partitions, double hotKeyThreshold,
+			boolean splitHotKeys) {
+		List<String> sorted = new ArrayList<String>(samples);
+		Collections.sort(sorted, KeyComparator.getSortOrder());
+		List<String> pivots = new ArrayList<String>();
+		int total = sorted.size();
+		// samples taken since the last pivot
+		int taken = 0;
+		int remaining = total;
+		String previousKey = null;
+		int i = 0;
+		while (i < total && pivots.size() < partitions - 1) {
+			String key = sorted.get(i);
+			int count = 1;
+			while (i + count < total && KeyComparator.sameGroup(sorted.get(i + count), key)) {
+				count++;
+			}
+			// near-equal share of the samples left for each remaining partition
+			double target = (double) (taken + remaining) / (partitions - pivots.size());
+			if (count >= hotKeyThreshold * target) {
+				// end the current partition before the hot key
+				if (taken > 0) {
+					pivots.add(previousKey);
+				}
+				int span = 1;
+				if (splitHotKeys) {
+					span = (int) Math.max(1, Math.ceil(count / target));
+				}
+				span = Math.min(span, partitions - 1 - pivots.size());
+				for (int j = 0; j < span; j++) {
+					pivots.add(key);
+				}
+				taken = 0;
+				remaining -= count;
+			}
+			else {
+				if (taken > 0 && taken + count - target > target - taken) {
+					// the partition comes nearer its share by ending before this key
+					pivots.add(previousKey);
+					taken = 0;
+					target = (double) remaining / (partitions - pivots.size());
+				}
+				taken += count;
+				remaining -= count;
+				if (taken >= target && pivots.size() < partitions - 1) {
+					pivots.add(key);
+					taken = 0;
+				}
+			}
+			previousKey = key;
+			i += count;
+		}
+		return new PartitionPlan(pivots);
+	}
+
+	/**
+	 * @return the pivots in key order
+	 */
+	public List<String> getPivots() {
+		return pivots;
+	}
+
+	/**
+	 * Method to find the partition of a key by binary search over the pivots, with the comparator of the sort,
+	 * or the grouping comparator if the job sets one.
+	 * @param key
+	 * @return the first partition whose pivot is not less than the key
+	 */
+	public int getPartition(String key) {
+		long prefix = KeyComparator.prefix(key);
+		int low = 0;
+		int high = pivots.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int result;
+			if (Context.groupingComparator != null) {
+				result = Context.groupingComparator.compare(pivots.get(mid), key);
+			}
+			else {
+				result = KeyComparator.compare(pivots.get(mid), prefixes[mid], key, prefix);
+			}
+			if (result < 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Method to get the number of partitions a key is spread over, starting at the given partition.
+	 * @param key
+	 * @param partition the partition the key falls into
+	 * @return 1 unless the key is a hot key repeated as a pivot
+	 */
+	public int getSpan(String key, int partition) {
+		int span = 0;
+		while (partition + span < pivots.size() && pivots.get(partition + span).equals(key)) {
+			span++;
+		}
+		return Math.max(1, span);
+	}
+
+	/**
+	 * Method to get the partition that merges the records of a hot key spread over the given partition.
+	 * @param partition
+	 * @return the first partition of the hot key, or the partition itself if it does not hold a spread hot key
+	 */
+	public int getOwner(int partition) {
+		int owner = partition;
+		while (owner > 0 && owner < pivots.size() && pivots.get(owner - 1).equals(pivots.get(owner))) {
+			owner--;
+		}
+		return owner;
+	}
+
+	/**
+	 * Method to check whether a partition holds part of a hot key spread over several partitions.
+	 * @param partition
+	 * @return
+	 */
+	public boolean isSpread(int partition) {
+		return getOwner(partition) != partition
+				|| (partition < pivots.size() && getSpan(pivots.get(partition), partition) > 1);
+	}
+}
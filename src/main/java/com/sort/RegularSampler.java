@@ -0,0 +1,77 @@
+package com.sort;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Takes regular samples of a stream of sorted keys whose length is not known in advance.
+ * Every stride-th key is kept, and the stride doubles whenever the kept keys reach the capacity,
+ * so memory stays bounded however long the stream is.
+ */
+public class RegularSampler {
+
+	private static final int DEFAULT_CAPACITY = 4096;
+
+	private int capacity;
+	private ArrayList<String> kept = new ArrayList<String>();
+	private long stride = 1;
+	private long count = 0;
+
+	public RegularSampler() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity maximum number of keys kept
+	 */
+	public RegularSampler(int capacity) {
+		this.capacity = Math.max(2, capacity);
+	}
+
+	/**
+	 * Method to offer the next key of the stream.
+	 * @param key
+	 */
+	public void add(String key) {
+		if (count % stride == 0) {
+			if (kept.size() == capacity) {
+				// Keep every other key and sample half as often
+				ArrayList<String> halved = new ArrayList<String>(capacity);
+				for (int i = 0; i < kept.size(); i += 2) {
+					halved.add(kept.get(i));
+				}
+				kept = halved;
+				stride *= 2;
+			}
+			if (count % stride == 0) {
+				kept.add(key);
+			}
+		}
+		count++;
+	}
+
+	/**
+	 * @return the number of keys offered
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Method to get p regular samples, the keys nearest to the positions 0, n/p, 2n/p, ... of the stream.
+	 * @param p
+	 * @return the samples in stream order, empty if the stream was empty
+	 */
+	public List<String> getSamples(int p) {
+		List<String> samples = new ArrayList<String>();
+		if (count == 0) {
+			return samples;
+		}
+		for (int i = 0; i < p; i++) {
+			long position = count * i / p;
+			int index = (int) Math.min(kept.size() - 1, (position + stride / 2) / stride);
+			samples.add(kept.get(index));
+		}
+		return samples;
+	}
+}
@@ -0,0 +1,184 @@
+package com.sort;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.utils.RecordReader;
+import com.utils.RecordSource;
+import com.utils.RecordWriter;
+
+/**
+ * Merges any number of sorted record sources into a single sorted stream of records.
+ * Records with equal keys are returned in the order of their sources. The normalized prefix of the current
+ * key of every source is cached, so that most comparisons in the heap do not compare characters.
+ */
+public class RunMerger implements RecordSource {
+
+	private List<? extends RecordSource> sources;
+	private long[] prefixes;
+	private PriorityQueue<Integer> heap;
+	private int current = -1;
+
+	/**
+	 * @param sources sorted record sources to merge
+	 * @throws IOException
+	 */
+	public RunMerger(final List<? extends RecordSource> sources) throws IOException {
+		this.sources = sources;
+		this.prefixes = new long[sources.size()];
+		this.heap = new PriorityQueue<Integer>(Math.max(1, sources.size()), new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				int result = KeyComparator.compare(sources.get(i1).getKey(), prefixes[i1],
+						sources.get(i2).getKey(), prefixes[i2]);
+				if (result == 0) {
+					return i1.compareTo(i2);
+				}
+				return result;
+			}
+		});
+		for (int i = 0; i < sources.size(); i++) {
+			if (sources.get(i).next()) {
+				prefixes[i] = KeyComparator.prefix(sources.get(i).getKey());
+				heap.add(i);
+			}
+		}
+	}
+
+	/**
+	 * Opens a merger over the given sorted files.
+	 * @param files
+	 * @return
+	 * @throws IOException
+	 */
+	public static RunMerger open(List<String> files) throws IOException {
+		ArrayList<RecordReader> readers = new ArrayList<RecordReader>();
+		for (String file : files) {
+			readers.add(new RecordReader(file));
+		}
+		return new RunMerger(readers);
+	}
+
+	/**
+	 * Merges the given sorted files into the output file.
+	 * @param inputFiles
+	 * @param outputFile
+	 * @throws IOException
+	 */
+	public static void merge(List<String> inputFiles, String outputFile) throws IOException {
+		if (inputFiles.size() == 1) {
+			File output = new File(outputFile);
+			output.delete();
+			if (new File(inputFiles.get(0)).renameTo(output)) {
+				return;
+			}
+		}
+		RunMerger merger = RunMerger.open(inputFiles);
+		RecordWriter writer = new RecordWriter(outputFile, false);
+		try {
+			while (merger.next()) {
+				writer.write(merger.getKey(), merger.getValueBytes(), merger.getValueLength());
+			}
+		} finally {
+			writer.close();
+			merger.close();
+		}
+	}
+
+	/**
+	 * Merges the given sorted files into several output files holding consecutive key ranges of about equal
+	 * size. The records of a key, or of a group of keys reduced together, are never split between output files.
+	 * @param inputFiles
+	 * @param outputFiles
+	 * @throws IOException
+	 */
+	public static void merge(List<String> inputFiles, List<String> outputFiles) throws IOException {
+		if (outputFiles.size() == 1) {
+			merge(inputFiles, outputFiles.get(0));
+			return;
+		}
+		long total = 0;
+		for (String file : inputFiles) {
+			total += new File(file).length();
+		}
+		RunMerger merger = RunMerger.open(inputFiles);
+		int part = 0;
+		RecordWriter writer = new RecordWriter(outputFiles.get(part), false);
+		try {
+			String previousKey = null;
+			while (merger.next()) {
+				String key = merger.getKey();
+				// move to the next range at a key boundary, once its share of the input has been read
+				if (previousKey != null && part < outputFiles.size() - 1 && !KeyComparator.sameGroup(key, previousKey)
+						&& merger.getBytesRead() >= total * (part + 1) / outputFiles.size()) {
+					writer.close();
+					part++;
+					writer = new RecordWriter(outputFiles.get(part), false);
+				}
+				writer.write(key, merger.getValueBytes(), merger.getValueLength());
+				previousKey = key;
+			}
+		} finally {
+			writer.close();
+			merger.close();
+		}
+		for (int i = part + 1; i < outputFiles.size(); i++) {
+			new RecordWriter(outputFiles.get(i), false).close();
+		}
+	}
+
+	/**
+	 * @return the number of bytes read from the files merged, 0 if not merging files
+	 */
+	public long getBytesRead() {
+		long bytesRead = 0;
+		for (RecordSource source : sources) {
+			if (source instanceof RecordReader) {
+				bytesRead += ((RecordReader) source).getBytesRead();
+			}
+		}
+		return bytesRead;
+	}
+
+	@Override
+	public boolean next() throws IOException {
+		if (current >= 0 && sources.get(current).next()) {
+			prefixes[current] = KeyComparator.prefix(sources.get(current).getKey());
+			heap.add(current);
+		}
+		Integer head = heap.poll();
+		current = head == null ? -1 : head;
+		return current >= 0;
+	}
+
+	@Override
+	public String getKey() {
+		return sources.get(current).getKey();
+	}
+
+	@Override
+	public String getValue() {
+		return sources.get(current).getValue();
+	}
+
+	@Override
+	public byte[] getValueBytes() {
+		return sources.get(current).getValueBytes();
+	}
+
+	@Override
+	public int getValueLength() {
+		return sources.get(current).getValueLength();
+	}
+
+	@Override
+	public void close() {
+		for (RecordSource source : sources) {
+			source.close();
+		}
+	}
+}
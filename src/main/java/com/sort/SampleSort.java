@@ -1,22 +1,33 @@
 package com.sort;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import com.aws.AWSManager;
+import com.aws.AsyncUploader;
 import com.main.ClientMain;
-import com.main.ServerMain;
-import com.utils.FilePartitioner;
+import com.main.Context;
+import com.net.PartitionFetcher;
+import com.net.ShuffleClient;
+import com.net.SortClient;
+import com.reduce.Combiner;
+import com.reduce.GroupingIterator;
+import com.reduce.Reduce;
 import com.utils.FileUtils;
+import com.utils.GenericFactory;
+import com.utils.RecordReader;
+import com.utils.RecordWriter;
 
 /**
  * This class generates samples data, fetches pivots from samples, partitions
@@ -24,7 +35,16 @@ import com.utils.FileUtils;
  */
 public class SampleSort {
 	public AWSManager AWSConnect;
-	public ArrayList<SortObject> sortRecords;
+	// Sorted runs of this node, kept on local disk from phase 1 until they are partitioned
+	public ArrayList<String> runs;
+	// Pivots chosen in phase 3, needed again to merge hot keys
+	public PartitionPlan plan;
+	// Consecutive key ranges of the input of the reducers of this node, each the sorted files to merge
+	public ArrayList<List<String>> reduceRanges = new ArrayList<List<String>>();
+	// Separates the samples in messages, keys may hold commas
+	public static final String SAMPLE_SEPARATOR = "\n";
+	// Time given to the fetches still running to stop, once the merge no longer needs them
+	private static final long FETCH_STOP_WAIT = 30000;
 
 	/**
 	 * Constructor for Sample Sort
@@ -35,134 +55,396 @@ public class SampleSort {
 
 	/**
 	 * Phase 1 (Read, Sort and Sample Local Data) (Run by Client) This method
-	 * reads the files from S3 and generates samples
+	 * fetches the sorted runs of this node to local disk and takes regular
+	 * samples while streaming through their merge, so that only one record per
+	 * run is held in memory.
 	 * 
 	 * @param clientId
 	 * @return
 	 * @throws IOException
 	 */
 	public String readAndSampleData(int clientId) throws IOException {
-		// fetch given files and store in Client Memory
-		this.sortRecords = this.AWSConnect.getAllFiles(clientId);
-		// sort data
-		Collections.sort(this.sortRecords, new SortComparator());
+		// fetch given files, each of them is a sorted run
+		String runPath = ClientMain.SORT_PATH + "/" + "runs";
+		FileUtils.createDir(runPath);
+		this.runs = this.AWSConnect.getAllFiles(clientId, runPath);
 		// sample data
-		int n = this.sortRecords.size() * ClientMain.N_INSTANCES;
-		int p = ClientMain.N_INSTANCES;
-		int w = n / (p * p);
-		String samples = getSamples(this.sortRecords, w, p);
+		RegularSampler sampler = new RegularSampler();
+		RunMerger merger = RunMerger.open(this.runs);
+		try {
+			while (merger.next()) {
+				sampler.add(merger.getKey());
+			}
+		} finally {
+			merger.close();
+		}
+		// duplicate samples are kept, so that pivots can be weighted by frequency
+		List<String> regularSample = sampler.getSamples(ClientMain.N_INSTANCES * Math.max(1, Context.oversampling));
+		String samples = StringUtils.join(regularSample, SAMPLE_SEPARATOR);
 		return samples;
 	}
 
 	/**
-	 * This method is to get the samples from the sorted records.
+	 * Phase 2 : Find Pivots (Run by Client) This method chooses the pivots from
+	 * the samples of all the nodes. Every node receives the same samples and
+	 * chooses the same pivots, with the partitioning settings of the job.
 	 * 
-	 * @param sortRecords
-	 * @param w
-	 * @param p
+	 * @param concatSamples
 	 * @return
 	 */
-	public String getSamples(ArrayList<SortObject> sortRecords, int w, int p) {
-		TreeSet<String> regularSample = new TreeSet<String>();
-		for (int i = 0; i <= (p - 1) * w; i = i + w) {
-			regularSample.add(sortRecords.get(i).getKey());
+	public static PartitionPlan fetchPivotsFromSamples(String concatSamples) {
+		List<String> samples = new ArrayList<String>();
+		for (String sample : concatSamples.split(SAMPLE_SEPARATOR)) {
+			if (!sample.isEmpty()) {
+				samples.add(sample);
+			}
 		}
-		String samples = StringUtils.join(regularSample.toArray(), ",");
-		return samples;
+		// a group spread over several reducers would lose the order of its values
+		return PartitionPlan.fromSamples(samples, ClientMain.N_INSTANCES, Context.hotKeyThreshold,
+				Context.combiner != null && Context.groupingComparator == null);
 	}
 
 	/**
-	 * Phase 2 : Find Pivots (Run by Server) This method is to create pivots
-	 * from the generated samples
+	 * Phase 3 : Partition and Exchange (Run by Client) Partitions the sorted
+	 * records according to the pivots and uploads the data to S3. The records
+	 * of a hot key spread over several partitions are dealt to them in turn.
+	 * Partitions are uploaded in the background while the next ones are written.
 	 * 
-	 * @param concatSamples
-	 * @return
+	 * @param concatSamples samples of all the nodes
+	 * @param ClientId
+	 * @return the number of records in each partition, comma separated
+	 * @throws IOException
 	 */
-	public static String fetchPivotsFromSamples(final String concatSamples) {
-		String pivots = "";
-		if (concatSamples.length() > 0) {
-			String[] sampleArray = new ArrayList<String>() {
-				private static final long serialVersionUID = 1L;
-				{
-					for (String sample : concatSamples.split(","))
-						add(new String(sample));
-				}
-			}.toArray(new String[concatSamples.split(",").length]);
-			int rho = ServerMain.N_INSTANCES / 2;
-			Arrays.sort(sampleArray);
-			for (int i = ServerMain.N_INSTANCES; i <= (ServerMain.N_INSTANCES * (ServerMain.N_INSTANCES - 1))
-					+ rho; i = i + ServerMain.N_INSTANCES) {
-				pivots += "," + sampleArray[i];
+	public String partitionAndUploadData(String concatSamples, int ClientId) throws IOException {
+		this.plan = fetchPivotsFromSamples(concatSamples);
+		List<String> pivotList = this.plan.getPivots();
+		SortClient.LOG.info("Pivots: {}", pivotList);
+		RecordWriter[] writers = new RecordWriter[ClientMain.N_INSTANCES];
+		long[] sizes = new long[ClientMain.N_INSTANCES];
+		AsyncUploader uploader = null;
+		if (!ShuffleClient.isEnabled()) {
+			uploader = new AsyncUploader(this.AWSConnect, Context.uploadThreads, 2 * Context.uploadThreads);
+		}
+		try {
+			writePartitions(writers, sizes, uploader, ClientId);
+			if (uploader != null) {
+				uploader.awaitAll();
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while uploading partitions", e);
+		} finally {
+			if (uploader != null) {
+				uploader.shutdown();
 			}
 		}
-		return pivots.substring(1);
+		for (String run : this.runs) {
+			new File(run).delete();
+		}
+		this.runs = null;
+		return StringUtils.join(ArrayUtils.toObject(sizes), ",");
 	}
 
 	/**
-	 * Phase 3 : Partition and Exchange (Run by Client) Partitions the sorted
-	 * records according to the pivots and uploads the data to S3
+	 * Method to stream the merged runs into the partition files and publish every partition once it is complete.
 	 * 
-	 * @param pivots
+	 * @param writers
+	 * @param sizes
+	 * @param uploader
 	 * @param ClientId
+	 * @throws IOException
+	 * @throws InterruptedException
 	 */
-	public void partitionAndUploadData(final String pivots, int ClientId) {
-		String[] pivotList = new ArrayList<String>() {
-			private static final long serialVersionUID = 1L;
-			{
-				for (String pivot : pivots.split(","))
-					add(new String(pivot));
-			}
-		}.toArray(new String[pivots.split(",").length]);
-		HashMap<String, ArrayList<SortObject>> dataMap = new HashMap<String, ArrayList<SortObject>>();
-		for (SortObject t : sortRecords)
-			SortObject.upsertData(dataMap, t);
-		Comparator<String> stringComparator = new Comparator<String>() {
-			@Override
-			public int compare(String s1, String s2) {
-				if (s1.equalsIgnoreCase(s2)) {
-					return s1.compareTo(s2);
+	private void writePartitions(RecordWriter[] writers, long[] sizes, AsyncUploader uploader, int ClientId) throws IOException, InterruptedException {
+		RunMerger merger = RunMerger.open(this.runs);
+		// partitions before this one are complete and uploaded
+		int uploaded = 0;
+		try {
+			int i = 0;
+			int span = 1;
+			int turn = ClientId;
+			String previousKey = null;
+			while (merger.next()) {
+				String key = merger.getKey();
+				// records of a key are adjacent, so its partition is looked up once
+				if (!key.equals(previousKey)) {
+					i = this.plan.getPartition(key);
+					span = this.plan.getSpan(key, i);
+					previousKey = key;
+				}
+				for (; uploaded < i; uploaded++) {
+					uploadPartition(writers, uploaded, uploader, ClientId);
 				}
-				return s1.compareToIgnoreCase(s2);
+				int partition = i;
+				if (span > 1) {
+					partition = i + (turn++ % span);
+				}
+				if (writers[partition] == null) {
+					writers[partition] = new RecordWriter(partitionFile(partition, ClientId), false);
+				}
+				writers[partition].write(key, merger.getValueBytes(), merger.getValueLength());
+				sizes[partition]++;
 			}
-		};
-		TreeMap<String, ArrayList<SortObject>> sortedMap = new TreeMap<String, ArrayList<SortObject>>(stringComparator);
-		for (String key : dataMap.keySet()) {
-			sortedMap.put(key, dataMap.get(key));
-		}
-		sortRecords = null;
-		dataMap = null;
-		int i = 0;
-		for (String key : sortedMap.keySet()) {
-			if (i < pivotList.length) {
-				if (key.compareToIgnoreCase(pivotList[i]) > 0) {
-					String uploadFileName = ClientMain.SORT_PATH + "/" + String.valueOf(i) + "_" + ClientId;
-					String ec2FileName = ClientMain.SORT_PATH + "/" + String.valueOf(i) + "/" + ClientId;
-					this.AWSConnect.sendFileToS3(uploadFileName, ec2FileName);
-					i++;
+		} finally {
+			for (RecordWriter writer : writers) {
+				if (writer != null) {
+					writer.close();
 				}
 			}
-			FileUtils.useBufferedOutPutStream(sortedMap.get(key),
-					ClientMain.SORT_PATH + "/" + String.valueOf(i) + "_" + ClientId);
+			merger.close();
+		}
+		// for the last partitions, including the empty ones
+		for (; uploaded < ClientMain.N_INSTANCES; uploaded++) {
+			uploadPartition(writers, uploaded, uploader, ClientId);
 		}
-		// for the last partition
-		String uploadFileName = ClientMain.SORT_PATH + "/" + String.valueOf(i) + "_" + ClientId;
-		String ec2FileName = ClientMain.SORT_PATH + "/" + String.valueOf(i) + "/" + ClientId;
-		this.AWSConnect.sendFileToS3(uploadFileName, ec2FileName);
+	}
 
+	/**
+	 * Method to close the given partition of this node and publish it for the node that merges it.
+	 * With direct shuffle the partition stays on local disk, to be pulled by that node, and is backed up to S3
+	 * unless it is the partition of this node.
+	 * @param writers
+	 * @param partition
+	 * @param uploader uploads the partition to S3, null with direct shuffle
+	 * @param ClientId
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private void uploadPartition(RecordWriter[] writers, int partition, AsyncUploader uploader, int ClientId)
+			throws IOException, InterruptedException {
+		if (writers[partition] != null) {
+			writers[partition].close();
+			writers[partition] = null;
+		}
+		else {
+			new RecordWriter(partitionFile(partition, ClientId), false).close();
+		}
+		String key = ClientMain.SORT_PATH + "/" + String.valueOf(partition) + "/" + ClientId;
+		if (uploader != null) {
+			uploader.submit(partitionFile(partition, ClientId), key);
+		}
+		else if (partition != ClientId) {
+			// the partition of this node is only read here, from local disk
+			ShuffleClient.backUp(this.AWSConnect, partitionFile(partition, ClientId), key);
+		}
 	}
 
 	/**
-	 * Phase 4 (Merge Partitions) This method reads the files from S3 and
-	 * concatenates them
+	 * @param partition
+	 * @param ClientId
+	 * @return the local file of the given partition of this node
+	 */
+	private static String partitionFile(int partition, int ClientId) {
+		return ClientMain.SORT_PATH + "/" + String.valueOf(partition) + "_" + ClientId;
+	}
+
+	/**
+	 * Phase 4 (Merge Partitions) This method fetches the partition of this node
+	 * from every node and merges them into the sorted input of the reducers,
+	 * split at key boundaries into one range per reduce thread
 	 * 
 	 * @param clientId
 	 * @throws FileNotFoundException
 	 * @throws IOException
 	 */
 	public void phaseFour(int clientId) throws FileNotFoundException, IOException {
-		String concatFileName = this.AWSConnect.readFilesfromS3andConcat(clientId);
-		ClientMain.REDUCE_PATH = ClientMain.TEMP_PATH + "/" + "reduce";
-		FileUtils.createDir(ClientMain.REDUCE_PATH);
-		FilePartitioner.partition(concatFileName);
+		String partitionDir = ClientMain.SORT_PATH + "/" + clientId;
+		FileUtils.createDir(partitionDir);
+		ArrayList<String> partitionFiles;
+		if (ShuffleClient.isEnabled()) {
+			try {
+				partitionFiles = ShuffleClient.fetchPartitions(clientId, partitionDir, getShuffleFallback());
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while fetching partitions", e);
+			}
+		}
+		else {
+			partitionFiles = this.AWSConnect.getPartitionFiles(clientId, partitionDir);
+		}
+		// k-way merge of the sorted partitions from all the nodes
+		String concatFileName = partitionDir + "/" + "finalPart-" + clientId;
+		if (this.plan != null && this.plan.getOwner(clientId) != clientId) {
+			// this partition holds part of a hot key, combine it and hand it to the owner of the key
+			mergePartitions(partitionFiles, Collections.singletonList(concatFileName));
+			String hotFile = ClientMain.SORT_PATH + "/" + "hot-" + clientId;
+			combineHotPartition(concatFileName, hotFile);
+			this.AWSConnect.sendFileToS3(hotFile,
+					ClientMain.SORT_PATH + "/" + "hot" + "/" + this.plan.getOwner(clientId) + "/" + clientId);
+			return;
+		}
+		List<String> rangeFiles = new ArrayList<String>();
+		for (int i = 0; i < Math.max(1, Context.reduceThreads); i++) {
+			rangeFiles.add(concatFileName + "-" + i);
+		}
+		mergePartitions(partitionFiles, rangeFiles);
+		for (String rangeFile : rangeFiles) {
+			this.reduceRanges.add(new ArrayList<String>(Collections.singletonList(rangeFile)));
+		}
+	}
+
+	/**
+	 * Method to check whether this node can reduce its partition while it is being fetched. A node holding
+	 * part of a spread hot key cannot, its owner needs the partial values combined by the other nodes after
+	 * their merge.
+	 * 
+	 * @param clientId
+	 * @return
+	 */
+	public boolean canPipelineReduce(int clientId) {
+		return Context.pipelinedReduce && (this.plan == null || !this.plan.isSpread(clientId));
+	}
+
+	/**
+	 * Phase 4 and Reduce, pipelined (Run by Client) Merges the partition of
+	 * this node from all the nodes while it is still arriving, and reduces the
+	 * merged records as they come out of the merge. The merge holds the next
+	 * record of every node, which is the watermark of that node: a key is only
+	 * merged, and reduced, once every node has moved past it or has no more
+	 * records, so reduce overlaps with the tail of the shuffle.
+	 * 
+	 * @param clientId
+	 * @param reduce
+	 * @throws IOException
+	 */
+	public void mergeAndReduce(int clientId, Reduce reduce) throws IOException {
+		String partitionDir = ClientMain.SORT_PATH + "/" + clientId;
+		FileUtils.createDir(partitionDir);
+		List<String> partitionFiles = new ArrayList<String>();
+		int fetchThreads = ShuffleClient.isEnabled() ? ShuffleClient.MAX_FETCH_THREADS : 2 * Context.uploadThreads;
+		ExecutorService fetchPool = Executors.newFixedThreadPool(Math.max(1, Math.min(fetchThreads, ClientMain.N_INSTANCES)));
+		RunMerger merger = null;
+		try {
+			List<InputStream> streams;
+			if (ShuffleClient.isEnabled()) {
+				streams = ShuffleClient.openPartitions(clientId, partitionDir, partitionFiles, getShuffleFallback(),
+						fetchPool);
+			}
+			else {
+				streams = this.AWSConnect.openPartitionStreams(clientId, partitionDir, partitionFiles, fetchPool);
+			}
+			List<RecordReader> readers = new ArrayList<RecordReader>();
+			for (InputStream stream : streams) {
+				readers.add(new RecordReader(stream));
+			}
+			merger = new RunMerger(readers);
+			reduce.reduce(clientId, merger);
+		} finally {
+			// if reduce failed the fetches may still be writing the partition files, stop them before deleting
+			stopFetches(fetchPool);
+			if (merger != null) {
+				merger.close();
+			}
+			for (String partitionFile : partitionFiles) {
+				new File(partitionFile).delete();
+			}
+		}
+	}
+
+	/**
+	 * Method to stop the fetches of the partitions still running and wait for their threads to end.
+	 * 
+	 * @param fetchPool
+	 */
+	private void stopFetches(ExecutorService fetchPool) {
+		fetchPool.shutdownNow();
+		try {
+			if (!fetchPool.awaitTermination(FETCH_STOP_WAIT, TimeUnit.MILLISECONDS)) {
+				SortClient.LOG.warn("Fetches of the partition still running after {} ms", FETCH_STOP_WAIT);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the fetcher of the partitions that cannot be fetched from their node, null without shuffle backup
+	 */
+	private PartitionFetcher getShuffleFallback() {
+		return Context.shuffleBackup ? this.AWSConnect.getPartitionFetcher() : null;
+	}
+
+	/**
+	 * Method to merge the partitions fetched from all the nodes and delete them.
+	 * 
+	 * @param partitionFiles
+	 * @param outputFiles
+	 * @throws IOException
+	 */
+	private void mergePartitions(List<String> partitionFiles, List<String> outputFiles) throws IOException {
+		RunMerger.merge(partitionFiles, outputFiles);
+		for (String partitionFile : partitionFiles) {
+			new File(partitionFile).delete();
+		}
+	}
+
+	/**
+	 * Method to combine the records of a partition holding a single hot key into a file of partial values.
+	 * 
+	 * @param partitionFile
+	 * @param hotFile
+	 * @throws IOException
+	 */
+	private void combineHotPartition(String partitionFile, String hotFile) throws IOException {
+		new File(hotFile).createNewFile();
+		RecordReader reader = new RecordReader(partitionFile);
+		Context context = new Context();
+		context.setOutputFile(hotFile);
+		try {
+			Combiner combiner = GenericFactory.getInstance(Context.combiner);
+			// the values are streamed from the file, a hot key may not fit in memory
+			GroupingIterator groups = new GroupingIterator(reader, true);
+			while (groups.nextKey()) {
+				combiner.combine(groups, context);
+			}
+		} catch (IllegalAccessException | InstantiationException e) {
+			throw new IllegalStateException("Cannot instantiate combiner " + Context.combiner.getName(), e);
+		} catch (Throwable t) {
+			context.abort();
+			throw t;
+		} finally {
+			reader.close();
+		}
+		context.close();
+	}
+
+	/**
+	 * Merge Hot Keys (Run by Client) Adds the partial values of the hot key
+	 * owned by this node, combined by the other nodes it was spread over, to
+	 * the last non-empty key range of the input of the reducers, since the hot
+	 * key is the last key of the partition of its owner.
+	 * 
+	 * @param clientId
+	 * @throws IOException
+	 */
+	public void mergeHotKeyPartials(int clientId) throws IOException {
+		if (this.plan == null) {
+			return;
+		}
+		String hotPath = ClientMain.SORT_PATH + "/" + "hot";
+		FileUtils.createDir(hotPath);
+		ArrayList<String> partials = this.AWSConnect.getFilesWithPrefix(hotPath + "/" + clientId, hotPath);
+		if (partials.isEmpty()) {
+			return;
+		}
+		if (this.reduceRanges.isEmpty()) {
+			this.reduceRanges.add(new ArrayList<String>());
+		}
+		this.reduceRanges.get(getLastNonEmptyRange()).addAll(partials);
+	}
+
+	/**
+	 * Method to find the last key range holding records. The ranges after it were left empty by the merge,
+	 * adding the partial values there would reduce the hot key a second time.
+	 * 
+	 * @return index of the last key range holding records, 0 if all are empty
+	 */
+	private int getLastNonEmptyRange() {
+		for (int i = this.reduceRanges.size() - 1; i > 0; i--) {
+			for (String file : this.reduceRanges.get(i)) {
+				if (new File(file).length() > 0) {
+					return i;
+				}
+			}
+		}
+		return 0;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,180 @@
+package com.sort;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import com.main.Context;
+import com.reduce.Combiner;
+import com.reduce.GroupingIterator;
+import com.utils.RecordSource;
+import com.utils.RecordWriter;
+
+/**
+ * Bounded in-memory buffer for map output. Records are collected per output file until the
+ * buffer is full, then every file's records are sorted and spilled to disk as a sorted run.
+ * When the buffer is closed, the runs of each output file are merged into the output file.
+ */
+public class SortBuffer {
+
+	// Approximate overhead of a buffered record (SortObject with its key prefix, the key String and its char
+	// array, the value byte array)
+	private static final int RECORD_OVERHEAD = 88;
+
+	private long limit;
+	private long bufferedBytes = 0;
+	private int spillCount = 0;
+	private Combiner combiner;
+	private HashMap<String, ArrayList<SortObject>> buffers = new HashMap<String, ArrayList<SortObject>>();
+	private HashMap<String, ArrayList<String>> spills = new HashMap<String, ArrayList<String>>();
+
+	/**
+	 * @param limit size of the buffer in bytes
+	 * @param combiner combiner to run over every sorted run, may be null
+	 */
+	public SortBuffer(long limit, Combiner combiner) {
+		this.limit = limit;
+		this.combiner = combiner;
+	}
+
+	/**
+	 * Adds a record for the given output file, spilling the buffer if it is full.
+	 * @param key
+	 * @param value
+	 * @param filePath
+	 * @throws IOException
+	 */
+	public void add(String key, String value, String filePath) throws IOException {
+		ArrayList<SortObject> records = buffers.get(filePath);
+		if (records == null) {
+			records = new ArrayList<SortObject>();
+			buffers.put(filePath, records);
+		}
+		SortObject record = new SortObject(key, value);
+		records.add(record);
+		bufferedBytes += 2 * key.length() + record.getValueBytes().length + RECORD_OVERHEAD;
+		if (bufferedBytes >= limit) {
+			spill();
+		}
+	}
+
+	/**
+	 * Sorts the buffered records of every output file and writes them to disk as sorted runs.
+	 * @throws IOException
+	 */
+	public void spill() throws IOException {
+		for (Entry<String, ArrayList<SortObject>> entry : buffers.entrySet()) {
+			String filePath = entry.getKey();
+			ArrayList<String> runs = spills.get(filePath);
+			if (runs == null) {
+				runs = new ArrayList<String>();
+				spills.put(filePath, runs);
+			}
+			String runPath = filePath + "-spill-" + spillCount;
+			writeRun(entry.getValue(), runPath);
+			runs.add(runPath);
+		}
+		buffers.clear();
+		bufferedBytes = 0;
+		spillCount += 1;
+	}
+
+	/**
+	 * Writes the sorted records to a run, combining the values of each key if a combiner is set. The
+	 * combiner reads the buffered records through a GroupingIterator, as when combining a file.
+	 * @param records
+	 * @param runPath
+	 * @throws IOException
+	 */
+	private void writeRun(ArrayList<SortObject> records, String runPath) throws IOException {
+		Collections.sort(records, new SortComparator());
+		if (combiner == null) {
+			RecordWriter writer = new RecordWriter(runPath, false);
+			try {
+				for (SortObject record : records) {
+					writer.write(record.getKey(), record.getValueBytes(), record.getValueBytes().length);
+				}
+			} finally {
+				writer.close();
+			}
+			return;
+		}
+		Context context = new Context();
+		context.setOutputFile(runPath);
+		try {
+			GroupingIterator groups = new GroupingIterator(new BufferSource(records), true);
+			while (groups.nextKey()) {
+				combiner.combine(groups, context);
+			}
+		} catch (Throwable t) {
+			context.abort();
+			throw t;
+		}
+		context.close();
+		// Make sure the run exists even if the combiner did not emit anything
+		new File(runPath).createNewFile();
+	}
+
+	/**
+	 * Spills the remaining records and merges the runs of every output file into the output file.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (!buffers.isEmpty()) {
+			spill();
+		}
+		for (Entry<String, ArrayList<String>> entry : spills.entrySet()) {
+			RunMerger.merge(entry.getValue(), entry.getKey());
+			for (String run : entry.getValue()) {
+				new File(run).delete();
+			}
+		}
+		spills.clear();
+	}
+
+	/**
+	 * Reads sorted buffered records as a RecordSource.
+	 */
+	private static class BufferSource implements RecordSource {
+		private List<SortObject> records;
+		private int current = -1;
+
+		public BufferSource(List<SortObject> records) {
+			this.records = records;
+		}
+
+		@Override
+		public boolean next() {
+			current++;
+			return current < records.size();
+		}
+
+		@Override
+		public String getKey() {
+			return records.get(current).getKey();
+		}
+
+		@Override
+		public String getValue() {
+			return records.get(current).getValue();
+		}
+
+		@Override
+		public byte[] getValueBytes() {
+			return records.get(current).getValueBytes();
+		}
+
+		@Override
+		public int getValueLength() {
+			return records.get(current).getValueBytes().length;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -1,7 +1,7 @@
 package com.sort;
-import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
+
+import com.utils.RecordWriter;
 
 /**
  * Custom class for Sorting the data
@@ -10,7 +10,10 @@ import java.util.HashMap;
 public class SortObject {
 
 	public String key;
-	private String value;
+	// UTF-8 bytes of the value, as they are written to the map output
+	private byte[] value;
+	// Normalized prefix of the key, see KeyComparator.prefix
+	private long prefix;
 
 
 	/**
@@ -25,45 +28,45 @@ public class SortObject {
 	 */
 	public void setKey(String key) {
 		this.key = key;
+		this.prefix = KeyComparator.prefix(key);
+	}
+
+	/**
+	 * @return the normalized prefix of the key
+	 */
+	public long getPrefix() {
+		return prefix;
 	}
 
 	/**
 	 * @return the value
 	 */
 	public String getValue() {
-		return value;
+		return new String(value, RecordWriter.CHARSET);
 	}
 
 	/**
 	 * @param value the value to set
 	 */
 	public void setValue(String value) {
-		this.value = value;
+		this.value = value.getBytes(RecordWriter.CHARSET);
 	}
 
 	/**
-	 * @param key
-	 * @param value
+	 * @return the UTF-8 bytes of the value
 	 */
-	public SortObject(String key, String value) {
-		this.key = key;
-		this.value = value;
+	public byte[] getValueBytes() {
+		return value;
 	}
 
 	/**
-	 * Method to insert the records in a HashMap
-	 * @param dataMap
-	 * @param record
+	 * @param key
+	 * @param value
 	 */
-	public static void upsertData(HashMap<String, ArrayList<SortObject>> dataMap, SortObject record) {
-		if (dataMap.containsKey(record.getKey())) {
-			ArrayList<SortObject> temp = dataMap.get(record.getKey());
-			temp.add(record);
-		} else {
-			ArrayList<SortObject> newList = new ArrayList<SortObject>();
-			newList.add(record);
-			dataMap.put(record.getKey(), newList);
-		}
+	public SortObject(String key, String value) {
+		this.key = key;
+		this.value = value.getBytes(RecordWriter.CHARSET);
+		this.prefix = KeyComparator.prefix(key);
 	}
 
 	/**
@@ -71,7 +74,7 @@ public class SortObject {
 	 */
 	@Override
 	public String toString() {
-		return "SortObject [key=" + key + ", value=" + value + "]";
+		return "SortObject [key=" + key + ", value=" + getValue() + "]";
 	}
 }
 
@@ -81,6 +84,6 @@ public class SortObject {
  */
 class SortComparator implements Comparator<SortObject> {
 	public int compare(SortObject object1, SortObject object2) {
-		return object1.getKey().compareToIgnoreCase(object2.getKey());
+		return KeyComparator.compare(object1.getKey(), object1.getPrefix(), object2.getKey(), object2.getPrefix());
 	}
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.utils;
+
+import java.io.IOException;
+
+/**
+ * Provides an abstraction over a compression algorithm that works on whole blocks of bytes.
+ * Implementations are shared by all the threads of a node and must be thread safe.
+ */
+public interface BlockCodec {
+
+	/**
+	 * Compresses a block.
+	 * @param src bytes to compress
+	 * @param length number of bytes of src to compress
+	 * @param dst buffer for the compressed bytes, at least length long
+	 * @return the number of compressed bytes, or -1 if the block does not compress into fewer than length bytes
+	 */
+	int compress(byte[] src, int length, byte[] dst);
+
+	/**
+	 * Decompresses a block.
+	 * @param src compressed bytes
+	 * @param length number of bytes of src to decompress
+	 * @param dst buffer for the decompressed bytes
+	 * @param rawLength number of bytes the block decompresses to
+	 * @throws IOException if the block is corrupt
+	 */
+	void decompress(byte[] src, int length, byte[] dst, int rawLength) throws IOException;
+}
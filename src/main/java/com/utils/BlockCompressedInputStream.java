@@ -0,0 +1,104 @@
+package com.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that reads the blocks written by BlockCompressedOutputStream.
+ */
+public class BlockCompressedInputStream extends InputStream {
+
+	private InputStream in;
+	private BlockCodec codec;
+	private byte[] block = new byte[BlockCompressedOutputStream.BLOCK_SIZE];
+	private byte[] compressed = new byte[BlockCompressedOutputStream.BLOCK_SIZE];
+	private int position = 0;
+	private int limit = 0;
+
+	/**
+	 * @param in
+	 * @param codec
+	 */
+	public BlockCompressedInputStream(InputStream in, BlockCodec codec) {
+		this.in = in;
+		this.codec = codec;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (position == limit && !readBlock()) {
+			return -1;
+		}
+		return block[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (position == limit && !readBlock()) {
+			return -1;
+		}
+		int n = Math.min(len, limit - position);
+		System.arraycopy(block, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return limit - position;
+	}
+
+	/**
+	 * Method to read and decompress the next block.
+	 * @return false at the end of the stream
+	 * @throws IOException
+	 */
+	private boolean readBlock() throws IOException {
+		int first = in.read();
+		if (first < 0) {
+			return false;
+		}
+		int rawLength = RecordReader.readVInt(in, first);
+		int next = in.read();
+		if (next < 0) {
+			throw new EOFException("Truncated block header");
+		}
+		int storedLength = RecordReader.readVInt(in, next);
+		if (rawLength > block.length) {
+			block = new byte[rawLength];
+		}
+		if (storedLength == rawLength) {
+			readFully(block, storedLength);
+		}
+		else {
+			if (storedLength > compressed.length) {
+				compressed = new byte[storedLength];
+			}
+			readFully(compressed, storedLength);
+			codec.decompress(compressed, storedLength, block, rawLength);
+		}
+		position = 0;
+		limit = rawLength;
+		return true;
+	}
+
+	private void readFully(byte[] b, int length) throws IOException {
+		int read = 0;
+		while (read < length) {
+			int n = in.read(b, read, length - read);
+			if (n < 0) {
+				throw new EOFException("Truncated block");
+			}
+			read += n;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
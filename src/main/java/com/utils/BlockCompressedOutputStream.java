@@ -0,0 +1,112 @@
+package com.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Output stream that compresses the bytes written to it in blocks. Every block is the varint length of its
+ * raw bytes, the varint length of its stored bytes and the stored bytes. A block that does not compress is
+ * stored raw, its two lengths are then equal.
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+
+	public static final int BLOCK_SIZE = 64 * 1024;
+
+	// Totals over all the streams of this node, to report the compression achieved
+	private static final AtomicLong rawBytes = new AtomicLong();
+	private static final AtomicLong storedBytes = new AtomicLong();
+
+	private OutputStream out;
+	private BlockCodec codec;
+	private byte[] block = new byte[BLOCK_SIZE];
+	private byte[] compressed = new byte[BLOCK_SIZE];
+	private int count = 0;
+
+	/**
+	 * @param out
+	 * @param codec
+	 */
+	public BlockCompressedOutputStream(OutputStream out, BlockCodec codec) {
+		this.out = out;
+		this.codec = codec;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (count == block.length) {
+			writeBlock();
+		}
+		block[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (count == block.length) {
+				writeBlock();
+			}
+			int n = Math.min(len, block.length - count);
+			System.arraycopy(b, off, block, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Method to compress and write the buffered bytes as one block.
+	 * @throws IOException
+	 */
+	private void writeBlock() throws IOException {
+		if (count == 0) {
+			return;
+		}
+		int length = codec.compress(block, count, compressed);
+		RecordWriter.writeVInt(out, count);
+		if (length < 0) {
+			RecordWriter.writeVInt(out, count);
+			out.write(block, 0, count);
+			length = count;
+		}
+		else {
+			RecordWriter.writeVInt(out, length);
+			out.write(compressed, 0, length);
+		}
+		rawBytes.addAndGet(count);
+		storedBytes.addAndGet(length);
+		count = 0;
+	}
+
+	/**
+	 * Writes the buffered bytes as a block. Blocks are self-contained, so flushing often costs compression.
+	 */
+	@Override
+	public void flush() throws IOException {
+		writeBlock();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			writeBlock();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return the number of bytes written to all the compressed streams of this node
+	 */
+	public static long getRawBytes() {
+		return rawBytes.get();
+	}
+
+	/**
+	 * @return the number of bytes all the compressed streams of this node have stored
+	 */
+	public static long getStoredBytes() {
+		return storedBytes.get();
+	}
+}
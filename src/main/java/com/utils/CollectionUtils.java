@@ -1,7 +1,10 @@
 package com.utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * Class to extend capabilities of Java Collections.
@@ -56,4 +59,55 @@ public class CollectionUtils {
         }
         return partitionedList;
     }
+
+    /**
+     * Distributes the elements of a list over the given number of bins, so that the total size of every bin is
+     * nearly equal. Uses the longest-processing-time-first greedy rule: elements are taken in decreasing order of
+     * size and each one is put in the bin with the smallest total so far. Ties are broken by position, so the same
+     * input always yields the same bins. Every bin lists its elements in decreasing order of size.
+     * Example:
+     * Balancing [a:7, b:5, c:4, d:3, e:1] over 2 bins yields [[a, d], [b, c, e]] with totals 10 and 10.
+     * @param list Source list to distribute
+     * @param sizes Size of each element of the source list
+     * @param bins Number of bins
+     * @return a list of exactly bins lists
+     * @throws IllegalArgumentException if bins is not positive or sizes do not match the list
+     */
+    public static <T> List<List<T>> balance(List<T> list, final List<Long> sizes, int bins){
+        if(bins <= 0) throw new IllegalArgumentException("Number of bins must be positive: " + bins);
+        if(list.size() != sizes.size()) throw new IllegalArgumentException("Expected " + list.size() + " sizes");
+        Integer[] order = new Integer[list.size()];
+        for(int i = 0; i < order.length; i++){
+            order[i] = i;
+        }
+        // Largest elements first, stable on position
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                int result = sizes.get(i2).compareTo(sizes.get(i1));
+                return result != 0 ? result : i1.compareTo(i2);
+            }
+        });
+        final long[] totals = new long[bins];
+        // Least loaded bin first, lowest bin number on ties
+        PriorityQueue<Integer> binQueue = new PriorityQueue<Integer>(bins, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer b1, Integer b2) {
+                int result = Long.valueOf(totals[b1]).compareTo(totals[b2]);
+                return result != 0 ? result : b1.compareTo(b2);
+            }
+        });
+        List<List<T>> balancedList = new ArrayList<List<T>>();
+        for(int b = 0; b < bins; b++){
+            balancedList.add(new ArrayList<T>());
+            binQueue.add(b);
+        }
+        for(Integer index : order){
+            int bin = binQueue.poll();
+            balancedList.get(bin).add(list.get(index));
+            totals[bin] += sizes.get(index);
+            binQueue.add(bin);
+        }
+        return balancedList;
+    }
 }
@@ -0,0 +1,86 @@
+package com.utils;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Block codec using the Deflater and Inflater of the JDK. Every thread reuses its own Deflater and Inflater.
+ */
+public class DeflateCodec implements BlockCodec {
+
+	private final int level;
+	private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(level, true);
+		}
+	};
+	private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater(true);
+		}
+	};
+
+	/**
+	 * Creates a codec with the default compression level.
+	 */
+	public DeflateCodec() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param level compression level, from Deflater.BEST_SPEED (1) to Deflater.BEST_COMPRESSION (9)
+	 */
+	public DeflateCodec(int level) {
+		if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level: " + level);
+		}
+		this.level = level;
+	}
+
+	@Override
+	public int compress(byte[] src, int length, byte[] dst) {
+		Deflater deflater = deflaters.get();
+		deflater.reset();
+		deflater.setInput(src, 0, length);
+		deflater.finish();
+		int compressed = 0;
+		while (!deflater.finished()) {
+			if (compressed == length) {
+				return -1;
+			}
+			compressed += deflater.deflate(dst, compressed, length - compressed);
+		}
+		return compressed < length ? compressed : -1;
+	}
+
+	@Override
+	public void decompress(byte[] src, int length, byte[] dst, int rawLength) throws IOException {
+		Inflater inflater = inflaters.get();
+		inflater.reset();
+		inflater.setInput(src, 0, length);
+		int inflated = 0;
+		try {
+			while (inflated < rawLength) {
+				int count = inflater.inflate(dst, inflated, rawLength - inflated);
+				if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				inflated += count;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt compressed block", e);
+		}
+		if (inflated != rawLength) {
+			throw new IOException("Compressed block holds " + inflated + " bytes instead of " + rawLength);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DeflateCodec(level=" + level + ")";
+	}
+}
@@ -0,0 +1,109 @@
+package com.utils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Input stream over a file that another thread is still writing. Reads wait until the writer reports that
+ * more bytes have been written, or that the file is complete, so a reader can follow a download as it
+ * arrives. The writer may write bytes again at offsets it has already reported, as when a download is
+ * retried, as long as they are the same bytes.
+ */
+public class GrowingFileInputStream extends InputStream {
+
+	private String filePath;
+	private FileInputStream in;
+	// bytes read, only used by the reading thread
+	private long position = 0;
+	private long written = 0;
+	private boolean complete = false;
+	private IOException failure;
+
+	/**
+	 * @param filePath file being written, which may not exist yet
+	 */
+	public GrowingFileInputStream(String filePath) {
+		this.filePath = filePath;
+	}
+
+	/**
+	 * Method for the writer to report how many bytes of the file have been written from its start.
+	 * @param bytes
+	 */
+	public synchronized void written(long bytes) {
+		if (bytes > written) {
+			written = bytes;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Method for the writer to report that the whole file has been written.
+	 */
+	public synchronized void complete() {
+		complete = true;
+		notifyAll();
+	}
+
+	/**
+	 * Method for the writer to report that the file cannot be written, failing the reads waiting for it.
+	 * @param e
+	 */
+	public synchronized void fail(IOException e) {
+		failure = e;
+		notifyAll();
+	}
+
+	/**
+	 * Method to wait until there are bytes to read, or the file is complete.
+	 * @return the number of bytes that can be read, 0 at the end of the complete file
+	 * @throws IOException if the writer failed
+	 */
+	private synchronized long awaitAvailable() throws IOException {
+		try {
+			while (position == written && !complete && failure == null) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while waiting for " + filePath);
+		}
+		if (failure != null) {
+			throw new IOException("Writing " + filePath + " failed", failure);
+		}
+		return written - position;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		long available = awaitAvailable();
+		if (available == 0) {
+			return -1;
+		}
+		if (in == null) {
+			in = new FileInputStream(filePath);
+		}
+		int n = in.read(b, off, (int) Math.min(len, available));
+		if (n > 0) {
+			position += n;
+		}
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (in != null) {
+			in.close();
+		}
+	}
+}
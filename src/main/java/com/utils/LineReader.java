@@ -0,0 +1,175 @@
+package com.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads lines from a byte stream and keeps track of the number of bytes consumed, so that
+ * readers of byte ranges know where each line starts. A line that lies within the read buffer is framed
+ * in place; only a line crossing the end of the buffer is copied, to a line buffer that is reused.
+ * Lines are decoded as UTF-8, whether they are read as Strings or through a TextView.
+ */
+public class LineReader {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private InputStream in;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int bufferLength = 0;
+	private int bufferPosition = 0;
+	// Line buffer for the lines crossing the end of the read buffer
+	private byte[] line = new byte[128];
+	// The current line, in the read buffer or in the line buffer
+	private byte[] lineBytes;
+	private int lineStart = 0;
+	private int lineLength = 0;
+	private long position = 0;
+
+	/**
+	 * @param in
+	 */
+	public LineReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Reads the next line without its line terminator.
+	 * @return the line or null at the end of the stream
+	 * @throws IOException
+	 */
+	public String readLine() throws IOException {
+		if (!fillLine()) {
+			return null;
+		}
+		return new String(lineBytes, lineStart, lineLength, RecordWriter.CHARSET);
+	}
+
+	/**
+	 * Reads the next line without its line terminator into a view, without copying it to a String.
+	 * @param view set to the bytes of the line, valid until the next line is read
+	 * @return false at the end of the stream
+	 * @throws IOException
+	 */
+	public boolean readLine(TextView view) throws IOException {
+		if (!fillLine()) {
+			return false;
+		}
+		view.set(lineBytes, lineStart, lineLength);
+		return true;
+	}
+
+	/**
+	 * Skips the bytes up to and including the next line feed.
+	 * @return false if the end of the stream was reached first
+	 * @throws IOException
+	 */
+	public boolean skipLine() throws IOException {
+		while (true) {
+			if (bufferPosition == bufferLength && !fillBuffer()) {
+				return false;
+			}
+			byte b = buffer[bufferPosition++];
+			position++;
+			if (b == '\n') {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return number of bytes consumed from the stream
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Closes the underlying stream.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Frames the next line, in place when it ends within the read buffer, or else in the line buffer.
+	 * @return false at the end of the stream
+	 * @throws IOException
+	 */
+	private boolean fillLine() throws IOException {
+		if (bufferPosition == bufferLength && !fillBuffer()) {
+			return false;
+		}
+		int start = bufferPosition;
+		int end = indexOfLineFeed(start);
+		if (end < bufferLength) {
+			lineBytes = buffer;
+			lineStart = start;
+			lineLength = end - start;
+			// consume the line feed
+			bufferPosition = end + 1;
+			position += end + 1 - start;
+		}
+		else {
+			lineLength = 0;
+			while (true) {
+				append(start, end - start);
+				position += end - start;
+				bufferPosition = end;
+				if (end < bufferLength) {
+					// consume the line feed
+					bufferPosition++;
+					position++;
+					break;
+				}
+				if (!fillBuffer()) {
+					break;
+				}
+				start = 0;
+				end = indexOfLineFeed(0);
+			}
+			lineBytes = line;
+			lineStart = 0;
+		}
+		if (lineLength > 0 && lineBytes[lineStart + lineLength - 1] == '\r') {
+			lineLength--;
+		}
+		return true;
+	}
+
+	/**
+	 * @param start
+	 * @return the index of the first line feed of the read buffer from start, or the buffer length
+	 */
+	private int indexOfLineFeed(int start) {
+		int i = start;
+		while (i < bufferLength && buffer[i] != '\n') {
+			i++;
+		}
+		return i;
+	}
+
+	private void append(int start, int length) {
+		if (lineLength + length > line.length) {
+			line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+		}
+		System.arraycopy(buffer, start, line, lineLength, length);
+		lineLength += length;
+	}
+
+	private boolean fillBuffer() throws IOException {
+		int read = in.read(buffer, 0, buffer.length);
+		while (read == 0) {
+			read = in.read(buffer, 0, buffer.length);
+		}
+		if (read < 0) {
+			bufferLength = 0;
+			bufferPosition = 0;
+			return false;
+		}
+		bufferLength = read;
+		bufferPosition = 0;
+		return true;
+	}
+}
@@ -8,6 +8,8 @@ import java.io.Serializable;
 public class MessageHandler implements Serializable {
 
 	private static final long serialVersionUID = 1L;		
+	// Separator of the fields of a message, escaped within the fields
+	public static final String FIELD_SEPARATOR = "_";
 	private int opcode;
 	private String message;
 	private int status;
@@ -62,6 +64,36 @@ public class MessageHandler implements Serializable {
 		this.status = status;
 	}
 
+	/**
+	 * Method to join the fields of a message, such as paths that may contain the separator. The separator
+	 * and the escape character are escaped within every field, so that splitFields gives back the fields.
+	 * @param fields
+	 * @return
+	 */
+	public static String joinFields(String... fields) {
+		StringBuilder message = new StringBuilder();
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				message.append(FIELD_SEPARATOR);
+			}
+			message.append(fields[i].replace("%", "%25").replace(FIELD_SEPARATOR, "%5F"));
+		}
+		return message.toString();
+	}
+
+	/**
+	 * Method to split a message joined by joinFields into its fields.
+	 * @param message
+	 * @return
+	 */
+	public static String[] splitFields(String message) {
+		String[] fields = message.split(FIELD_SEPARATOR, -1);
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = fields[i].replace("%5F", FIELD_SEPARATOR).replace("%25", "%");
+		}
+		return fields;
+	}
+
 	/**
 	 * Displays the fields of the object in String format
 	 */
@@ -0,0 +1,97 @@
+package com.utils;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Class to collect key/value pairs in files. One buffered writer is kept open per file
+ * until the collector is closed, instead of opening the file again for every record.
+ */
+public class OutputCollector {
+
+	private HashMap<String, RecordSink> writers = new HashMap<String, RecordSink>();
+	private boolean text;
+
+	/**
+	 * Creates a collector of intermediate data in the binary record format.
+	 */
+	public OutputCollector() {
+		this(false);
+	}
+
+	/**
+	 * @param text true to write tab separated lines, as for the final output of a job
+	 */
+	public OutputCollector(boolean text) {
+		this.text = text;
+	}
+
+	/**
+	 * Method to write key/value pair to file in given path.
+	 * @param key
+	 * @param value
+	 * @param filePath
+	 * @throws IOException
+	 */
+	public void write(String key, String value, String filePath) throws IOException {
+		RecordSink writer = writers.get(filePath);
+		if (writer == null) {
+			writer = open(filePath);
+			writers.put(filePath, writer);
+		}
+		writer.write(key, value);
+	}
+
+	/**
+	 * Method to open the writer of the given file, the first time a pair is written to it.
+	 * @param filePath
+	 * @return
+	 * @throws IOException
+	 */
+	protected RecordSink open(String filePath) throws IOException {
+		return text ? new TextRecordWriter(filePath, true) : new RecordWriter(filePath, true);
+	}
+
+	/**
+	 * Method to flush and close all the files opened by this collector. Every file is closed even if
+	 * closing another one failed.
+	 * @throws IOException the first failure, with the others suppressed
+	 */
+	public void close() throws IOException {
+		close(false);
+	}
+
+	/**
+	 * Method to close all the files opened by this collector when their content is incomplete, discarding
+	 * it where the writer can.
+	 * @throws IOException the first failure, with the others suppressed
+	 */
+	public void abort() throws IOException {
+		close(true);
+	}
+
+	private void close(boolean abort) throws IOException {
+		IOException failure = null;
+		for (RecordSink writer : writers.values()) {
+			try {
+				if (abort) {
+					writer.abort();
+				}
+				else {
+					writer.close();
+				}
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+				else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		writers.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.main.Context;
+
+/**
+ * Class to read key/value records written by RecordWriter, with the same intermediate codec.
+ */
+public class RecordReader implements RecordSource {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private DataInputStream in;
+	// The file read, null if reading from another stream
+	private FileInputStream file;
+	// Reused for the bytes of every key
+	private byte[] buffer = new byte[256];
+	// Reused for the bytes of every value, which are only decoded to a String when asked for
+	private byte[] valueBuffer = new byte[256];
+	private int valueLength;
+	private String key;
+	private String value;
+
+	/**
+	 * @param filePath
+	 * @throws IOException
+	 */
+	public RecordReader(String filePath) throws IOException {
+		this(new FileInputStream(filePath));
+	}
+
+	/**
+	 * @param in
+	 */
+	public RecordReader(InputStream in) {
+		if (in instanceof FileInputStream) {
+			this.file = (FileInputStream) in;
+		}
+		InputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+		if (Context.intermediateCodec != null) {
+			buffered = new BlockCompressedInputStream(buffered, Context.intermediateCodec);
+		}
+		this.in = new DataInputStream(buffered);
+	}
+
+	@Override
+	public boolean next() throws IOException {
+		int first = in.read();
+		if (first < 0) {
+			return false;
+		}
+		key = readString(readVInt(in, first));
+		int next = in.read();
+		if (next < 0) {
+			throw new EOFException("Record truncated after key: " + key);
+		}
+		valueLength = readVInt(in, next);
+		if (valueBuffer.length < valueLength) {
+			valueBuffer = new byte[Math.max(valueLength, valueBuffer.length * 2)];
+		}
+		in.readFully(valueBuffer, 0, valueLength);
+		value = null;
+		return true;
+	}
+
+	/**
+	 * Method to read the given number of bytes as a UTF-8 string.
+	 * @param length
+	 * @return
+	 * @throws IOException
+	 */
+	private String readString(int length) throws IOException {
+		if (buffer.length < length) {
+			buffer = new byte[Math.max(length, buffer.length * 2)];
+		}
+		in.readFully(buffer, 0, length);
+		return new String(buffer, 0, length, RecordWriter.CHARSET);
+	}
+
+	/**
+	 * Method to read an int written by RecordWriter.writeVInt, whose first byte has already been read.
+	 * @param in
+	 * @param first
+	 * @return
+	 * @throws IOException
+	 */
+	public static int readVInt(InputStream in, int first) throws IOException {
+		int value = first & 0x7F;
+		int shift = 7;
+		int b = first;
+		while ((b & 0x80) != 0) {
+			b = in.read();
+			if (b < 0) {
+				throw new EOFException("Truncated length in record");
+			}
+			if (shift > 28) {
+				throw new IOException("Malformed length in record");
+			}
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		return value;
+	}
+
+	/**
+	 * @return the number of bytes read from the file so far, including the bytes buffered ahead of the
+	 * records returned, or 0 if not reading from a file
+	 */
+	public long getBytesRead() {
+		if (file == null) {
+			return 0;
+		}
+		try {
+			return file.getChannel().position();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	@Override
+	public String getKey() {
+		return key;
+	}
+
+	@Override
+	public String getValue() {
+		if (value == null) {
+			value = new String(valueBuffer, 0, valueLength, RecordWriter.CHARSET);
+		}
+		return value;
+	}
+
+	@Override
+	public byte[] getValueBytes() {
+		return valueBuffer;
+	}
+
+	@Override
+	public int getValueLength() {
+		return valueLength;
+	}
+
+	@Override
+	public void close() {
+		try {
+			in.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.utils;
+
+import java.io.IOException;
+
+/**
+ * Provides an abstraction over a file that key/value records are written to.
+ */
+public interface RecordSink {
+
+	/**
+	 * Writes a key/value record.
+	 * @param key
+	 * @param value
+	 * @throws IOException
+	 */
+	void write(String key, String value) throws IOException;
+
+	/**
+	 * Flushes and closes the sink.
+	 * @throws IOException
+	 */
+	void close() throws IOException;
+
+	/**
+	 * Closes the sink when what was written to it is incomplete, discarding it where the sink can.
+	 * @throws IOException
+	 */
+	void abort() throws IOException;
+}
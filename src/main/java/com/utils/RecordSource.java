@@ -0,0 +1,42 @@
+package com.utils;
+
+import java.io.IOException;
+
+/**
+ * Provides an abstraction over a stream of key/value records.
+ */
+public interface RecordSource {
+
+	/**
+	 * Advances to the next record.
+	 * @return false if there are no more records
+	 * @throws IOException
+	 */
+	boolean next() throws IOException;
+
+	/**
+	 * @return the key of the current record
+	 */
+	String getKey();
+
+	/**
+	 * @return the value of the current record
+	 */
+	String getValue();
+
+	/**
+	 * @return the UTF-8 bytes of the value of the current record, in a buffer that is reused by the next
+	 * record; only the first getValueLength() bytes belong to the value
+	 */
+	byte[] getValueBytes();
+
+	/**
+	 * @return the number of bytes of the value of the current record
+	 */
+	int getValueLength();
+
+	/**
+	 * Releases the resources held by the source.
+	 */
+	void close();
+}
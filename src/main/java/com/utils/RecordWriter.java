@@ -0,0 +1,104 @@
+package com.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import com.main.Context;
+
+/**
+ * Class to write key/value records of intermediate data to a file through a buffered stream.
+ * Every record is the varint length of the key, the UTF-8 bytes of the key, the varint length of the value
+ * and the UTF-8 bytes of the value, so that readers can slice records without parsing delimiters.
+ * The records are compressed in blocks when the job sets an intermediate codec.
+ */
+public class RecordWriter implements RecordSink {
+
+	public static final Charset CHARSET = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private OutputStream out;
+
+	/**
+	 * @param filePath
+	 * @param append
+	 * @throws IOException
+	 */
+	public RecordWriter(String filePath, boolean append) throws IOException {
+		this.out = new BufferedOutputStream(new FileOutputStream(filePath, append), BUFFER_SIZE);
+		if (Context.intermediateCodec != null) {
+			this.out = new BlockCompressedOutputStream(out, Context.intermediateCodec);
+		}
+	}
+
+	/**
+	 * Method to write key/value pair to the file.
+	 * @param key
+	 * @param value
+	 * @throws IOException
+	 */
+	@Override
+	public void write(String key, String value) throws IOException {
+		writeBytes(key.getBytes(CHARSET));
+		writeBytes(value.getBytes(CHARSET));
+	}
+
+	/**
+	 * Method to write key/value pair to the file, with the value already encoded, as when copying records
+	 * from a RecordSource.
+	 * @param key
+	 * @param value UTF-8 bytes of the value
+	 * @param length number of bytes of the value
+	 * @throws IOException
+	 */
+	public void write(String key, byte[] value, int length) throws IOException {
+		writeBytes(key.getBytes(CHARSET));
+		writeVInt(out, length);
+		out.write(value, 0, length);
+	}
+
+	/**
+	 * Method to write a length prefixed byte array.
+	 * @param bytes
+	 * @throws IOException
+	 */
+	private void writeBytes(byte[] bytes) throws IOException {
+		writeVInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Method to write a non-negative int in 1 to 5 bytes, 7 bits per byte with the high bit set on all
+	 * but the last byte.
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	public static void writeVInt(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Method to flush and close the file.
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	/**
+	 * Method to close the file. The records written are kept, the file is local to the node.
+	 * @throws IOException
+	 */
+	@Override
+	public void abort() throws IOException {
+		close();
+	}
+}
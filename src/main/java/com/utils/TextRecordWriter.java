@@ -0,0 +1,68 @@
+package com.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Class to write key/value records as tab separated lines, in UTF-8 like the input and intermediate data.
+ * Used for the final output of a job only, intermediate data is written by RecordWriter.
+ */
+public class TextRecordWriter implements RecordSink {
+
+	// Delimiter and line separator are encoded once and reused for every record.
+	private static final byte[] SEPARATOR = "\t".getBytes(RecordWriter.CHARSET);
+	private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes(RecordWriter.CHARSET);
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private OutputStream out;
+
+	/**
+	 * @param filePath
+	 * @param append
+	 * @throws IOException
+	 */
+	public TextRecordWriter(String filePath, boolean append) throws IOException {
+		this(new BufferedOutputStream(new FileOutputStream(filePath, append), BUFFER_SIZE));
+	}
+
+	/**
+	 * @param out stream the lines are written to, buffered by the caller
+	 */
+	public TextRecordWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Method to write key/value pair to the file.
+	 * @param key
+	 * @param value
+	 * @throws IOException
+	 */
+	@Override
+	public void write(String key, String value) throws IOException {
+		out.write(key.getBytes(RecordWriter.CHARSET));
+		out.write(SEPARATOR);
+		out.write(value.getBytes(RecordWriter.CHARSET));
+		out.write(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Method to flush and close the file.
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	/**
+	 * Method to close the file. The records written are kept, the file is local to the node.
+	 * @throws IOException
+	 */
+	@Override
+	public void abort() throws IOException {
+		close();
+	}
+}
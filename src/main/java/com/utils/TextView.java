@@ -0,0 +1,143 @@
+package com.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reusable view of a slice of UTF-8 bytes, read as a CharSequence. The view does not copy the bytes: it is
+ * pointed at the buffer of a reader for every line or value, and is only valid until the reader moves on.
+ * The characters are decoded the first time they are asked for, into a buffer reused by the view, so that
+ * code reading the bytes or the characters of the view allocates nothing. toString() copies the view to a
+ * String, for code that keeps it.
+ */
+public class TextView implements CharSequence {
+
+	private byte[] bytes = new byte[0];
+	private int offset;
+	private int length;
+	// Characters of the slice, valid when decoded is true
+	private char[] chars = new char[128];
+	private int charLength;
+	private boolean decoded;
+	private CharsetDecoder decoder;
+
+	/**
+	 * Method to point the view at a slice of bytes.
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 */
+	public void set(byte[] bytes, int offset, int length) {
+		this.bytes = bytes;
+		this.offset = offset;
+		this.length = length;
+		this.decoded = false;
+	}
+
+	/**
+	 * @return the buffer holding the bytes of the view, from getOffset() for getLength() bytes
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the offset of the first byte of the view
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return the number of bytes of the view
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public int length() {
+		decode();
+		return charLength;
+	}
+
+	@Override
+	public char charAt(int index) {
+		decode();
+		if (index < 0 || index >= charLength) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of " + charLength);
+		}
+		return chars[index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		decode();
+		if (start < 0 || end > charLength || start > end) {
+			throw new IndexOutOfBoundsException("Range " + start + "-" + end + " out of " + charLength);
+		}
+		return new String(chars, start, end - start);
+	}
+
+	/**
+	 * Method to compare the characters of the view with a String, without copying the view.
+	 * @param s
+	 * @return
+	 */
+	public boolean contentEquals(String s) {
+		decode();
+		if (s.length() != charLength) {
+			return false;
+		}
+		for (int i = 0; i < charLength; i++) {
+			if (chars[i] != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		if (decoded) {
+			return new String(chars, 0, charLength);
+		}
+		return new String(bytes, offset, length, RecordWriter.CHARSET);
+	}
+
+	/**
+	 * Method to decode the bytes of the view into the character buffer, if not done since the view was set.
+	 * ASCII is widened directly, the rest goes through a decoder that replaces malformed input like
+	 * new String(bytes, charset) does.
+	 */
+	private void decode() {
+		if (decoded) {
+			return;
+		}
+		// UTF-8 never decodes to more characters than bytes
+		if (chars.length < length) {
+			chars = new char[Math.max(length, chars.length * 2)];
+		}
+		int end = offset + length;
+		int i = offset;
+		int n = 0;
+		while (i < end && bytes[i] >= 0) {
+			chars[n++] = (char) bytes[i++];
+		}
+		if (i < end) {
+			if (decoder == null) {
+				decoder = RecordWriter.CHARSET.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			}
+			decoder.reset();
+			CharBuffer out = CharBuffer.wrap(chars, n, chars.length - n);
+			decoder.decode(ByteBuffer.wrap(bytes, i, end - i), out, true);
+			decoder.flush(out);
+			n = out.position();
+		}
+		charLength = n;
+		decoded = true;
+	}
+}
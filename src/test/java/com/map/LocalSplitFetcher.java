@@ -0,0 +1,40 @@
+package com.map;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Stand-in for S3 that serves input files from the local file system, the key of a file being its path.
+ * Every request waits for the given latency before returning.
+ */
+public class LocalSplitFetcher implements SplitFetcher {
+
+	private long latency;
+
+	/**
+	 * @param latency milliseconds added to every request
+	 */
+	public LocalSplitFetcher(long latency) {
+		this.latency = latency;
+	}
+
+	@Override
+	public InputStream open(String key, long start, long end) throws IOException {
+		try {
+			Thread.sleep(latency);
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while fetching " + key, e);
+		}
+		byte[] bytes = new byte[(int) (end - start)];
+		RandomAccessFile file = new RandomAccessFile(key, "r");
+		try {
+			file.seek(start);
+			file.readFully(bytes);
+		} finally {
+			file.close();
+		}
+		return new ByteArrayInputStream(bytes);
+	}
+}
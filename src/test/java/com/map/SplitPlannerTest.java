@@ -0,0 +1,43 @@
+package com.map;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Checks that the splits of a job get distinct names, which name the map output of their tasks.
+ */
+public class SplitPlannerTest {
+
+	@Test
+	public void namesSplitsOfFilesSharingANamePrefixApart() {
+		List<String> keys = Arrays.asList("input/data-1.txt", "input/data.txt", "input/logs.2019.gz",
+				"input/logs.2020.gz", "input/logs");
+		// data.txt is cut into splits 0 and 1, the others are whole files
+		List<Long> sizes = Arrays.asList(100L, 150L, 300L, 300L, 50L);
+		List<InputSplit> splits = SplitPlanner.plan(keys, sizes, 100);
+		assertEquals(6, splits.size());
+		Set<String> names = new HashSet<String>();
+		for (int i = 0; i < splits.size(); i++) {
+			assertEquals(i, splits.get(i).getId());
+			names.add(splits.get(i).getName());
+		}
+		assertEquals(names.toString(), splits.size(), names.size());
+	}
+
+	@Test
+	public void namesTheSameSplitsOnEveryNode() {
+		List<String> keys = Arrays.asList("input/a.txt", "input/a.csv");
+		List<Long> sizes = Arrays.asList(250L, 10L);
+		List<InputSplit> first = SplitPlanner.plan(keys, sizes, 100);
+		List<InputSplit> second = SplitPlanner.plan(keys, sizes, 100);
+		for (int i = 0; i < first.size(); i++) {
+			assertEquals(first.get(i).getName(), second.get(i).getName());
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package com.map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.map.SplitPrefetcher.PrefetchedSplit;
+
+public class SplitPrefetcherTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Fetcher that keeps track of the splits and bytes fetched and not yet released by the consumer.
+	 */
+	private static class CountingFetcher extends LocalSplitFetcher {
+		AtomicInteger outstanding = new AtomicInteger();
+		AtomicLong outstandingBytes = new AtomicLong();
+		int maxOutstanding;
+		long maxOutstandingBytes;
+		// outstanding bytes seen while more than one split was outstanding
+		long maxSharedBytes;
+
+		CountingFetcher(long latency) {
+			super(latency);
+		}
+
+		@Override
+		public InputStream open(String key, long start, long end) throws IOException {
+			int splits = outstanding.incrementAndGet();
+			long bytes = outstandingBytes.addAndGet(end - start);
+			synchronized (this) {
+				maxOutstanding = Math.max(maxOutstanding, splits);
+				maxOutstandingBytes = Math.max(maxOutstandingBytes, bytes);
+				if (splits > 1) {
+					maxSharedBytes = Math.max(maxSharedBytes, bytes);
+				}
+			}
+			return super.open(key, start, end);
+		}
+
+		/**
+		 * Called by the consumer before it releases a split, so the counts never fall behind the prefetcher.
+		 * @param length
+		 */
+		void released(long length) {
+			outstanding.decrementAndGet();
+			outstandingBytes.addAndGet(-length);
+		}
+	}
+
+	private List<InputSplit> createFiles(int[] sizes, HashMap<String, byte[]> contents) throws IOException {
+		List<InputSplit> splits = new ArrayList<InputSplit>();
+		for (int i = 0; i < sizes.length; i++) {
+			File file = folder.newFile("input" + i + ".txt");
+			byte[] bytes = new byte[sizes[i]];
+			for (int j = 0; j < bytes.length; j++) {
+				bytes[j] = (byte) (j % 10 == 9 ? '\n' : 'a' + (i + j) % 26);
+			}
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(bytes);
+			out.close();
+			contents.put(file.getPath(), bytes);
+			splits.add(new InputSplit(file.getPath(), 0, bytes.length, bytes.length, 0, i));
+		}
+		return splits;
+	}
+
+	/**
+	 * Takes, checks and releases every split on the calling thread, spending the given time on each.
+	 */
+	private int consume(SplitPrefetcher prefetcher, CountingFetcher fetcher, HashMap<String, byte[]> contents,
+			long work) throws Exception {
+		int consumed = 0;
+		PrefetchedSplit prefetched;
+		while ((prefetched = prefetcher.take()) != null) {
+			InputStream in = prefetched.open();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			in.close();
+			assertArrayEquals(contents.get(prefetched.getSplit().getKey()), bytes.toByteArray());
+			Thread.sleep(work);
+			fetcher.released(prefetched.getSplit().getLength());
+			prefetcher.release(prefetched);
+			consumed++;
+		}
+		return consumed;
+	}
+
+	@Test
+	public void downloadsOverlapWithMapping() throws Exception {
+		int[] sizes = new int[10];
+		Arrays.fill(sizes, 1000);
+		HashMap<String, byte[]> contents = new HashMap<String, byte[]>();
+		List<InputSplit> splits = createFiles(sizes, contents);
+		CountingFetcher fetcher = new CountingFetcher(100);
+		SplitPrefetcher prefetcher = new SplitPrefetcher(splits, fetcher, folder.newFolder("spool").getPath(), 2,
+				1024 * 1024);
+		long start = System.currentTimeMillis();
+		prefetcher.start();
+		int consumed = consume(prefetcher, fetcher, contents, 100);
+		long elapsed = System.currentTimeMillis() - start;
+		prefetcher.close();
+		assertEquals(splits.size(), consumed);
+		// serially, 10 downloads and 10 maps of 100 ms take 2 s; overlapped, about 1.1 s
+		assertTrue("Prefetch took " + elapsed + " ms", elapsed < 1600);
+		assertTrue(fetcher.maxOutstanding <= 2);
+	}
+
+	@Test
+	public void keepsWithinDepth() throws Exception {
+		int[] sizes = new int[12];
+		Arrays.fill(sizes, 100);
+		HashMap<String, byte[]> contents = new HashMap<String, byte[]>();
+		List<InputSplit> splits = createFiles(sizes, contents);
+		CountingFetcher fetcher = new CountingFetcher(5);
+		SplitPrefetcher prefetcher = new SplitPrefetcher(splits, fetcher, folder.newFolder("spool").getPath(), 3,
+				1024 * 1024);
+		prefetcher.start();
+		assertEquals(splits.size(), consume(prefetcher, fetcher, contents, 20));
+		prefetcher.close();
+		assertEquals(3, fetcher.maxOutstanding);
+	}
+
+	@Test
+	public void keepsWithinByteBudget() throws Exception {
+		// the 400 byte split is larger than the budget and must be downloaded alone
+		int[] sizes = { 100, 100, 100, 400, 100, 100, 100, 100 };
+		HashMap<String, byte[]> contents = new HashMap<String, byte[]>();
+		List<InputSplit> splits = createFiles(sizes, contents);
+		CountingFetcher fetcher = new CountingFetcher(5);
+		SplitPrefetcher prefetcher = new SplitPrefetcher(splits, fetcher, folder.newFolder("spool").getPath(), 8,
+				250);
+		prefetcher.start();
+		assertEquals(splits.size(), consume(prefetcher, fetcher, contents, 20));
+		prefetcher.close();
+		assertEquals(2, fetcher.maxOutstanding);
+		assertTrue(fetcher.maxSharedBytes <= 250);
+		assertEquals(400, fetcher.maxOutstandingBytes);
+	}
+
+	@Test
+	public void takeReturnsNullWhenDone() throws Exception {
+		CountingFetcher fetcher = new CountingFetcher(0);
+		SplitPrefetcher prefetcher = new SplitPrefetcher(new ArrayList<InputSplit>(), fetcher,
+				folder.newFolder("spool").getPath(), 2, 1024);
+		prefetcher.start();
+		assertNull(prefetcher.take());
+		prefetcher.close();
+	}
+}
@@ -0,0 +1,278 @@
+package com.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.main.ClientMain;
+import com.utils.GrowingFileInputStream;
+
+/**
+ * Shuffles a partition between several nodes on localhost. Every peer is a ShuffleWorker process serving
+ * its part of the partition; this process is the node that merges the partition. The partitions are also
+ * copied to a backup directory, standing in for the S3 backup.
+ */
+public class ShuffleClientTest {
+	private static final String JOB_ID = "shuffle-test";
+	private static final int PEERS = 3;
+	// this node
+	private static final int NODE = PEERS;
+	private static final int PARTITION = NODE;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<Process> workers = new ArrayList<Process>();
+	private HashMap<Integer, byte[]> contents = new HashMap<Integer, byte[]>();
+	private File backupDir;
+	private List<Integer> fallbacks = Collections.synchronizedList(new ArrayList<Integer>());
+	private long retryBackoff;
+	private long readTimeout;
+
+	/**
+	 * Fetches partitions from the backup directory, remembering which nodes it was used for.
+	 */
+	private PartitionFetcher fallback = new PartitionFetcher() {
+		@Override
+		public void fetch(int partition, int node, String localFile, GrowingFileInputStream stream) throws IOException {
+			fallbacks.add(node);
+			byte[] bytes = Files.readAllBytes(new File(backupDir, partition + "/" + node).toPath());
+			RandomAccessFile out = new RandomAccessFile(localFile, "rw");
+			try {
+				out.write(bytes);
+				out.setLength(bytes.length);
+			} finally {
+				out.close();
+			}
+			if (stream != null) {
+				stream.written(bytes.length);
+			}
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		retryBackoff = ShuffleClient.retryBackoff;
+		ShuffleClient.retryBackoff = 10;
+		readTimeout = ShuffleClient.readTimeout;
+		String logFile = folder.newFile("client.log").getPath();
+		System.setProperty("logfile.name", logFile);
+		backupDir = folder.newFolder("backup");
+		new File(backupDir, String.valueOf(PARTITION)).mkdirs();
+		Random random = new Random(7);
+		for (int node = 0; node <= PEERS; node++) {
+			File sortDir = folder.newFolder("node" + node);
+			// several fetch buffers long, and empty for one node
+			byte[] bytes = new byte[node == 1 ? 0 : 600 * 1024 + random.nextInt(1024)];
+			random.nextBytes(bytes);
+			contents.put(node, bytes);
+			Files.write(new File(sortDir, PARTITION + "_" + node).toPath(), bytes);
+			Files.copy(new File(sortDir, PARTITION + "_" + node).toPath(),
+					new File(backupDir, PARTITION + "/" + node).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		ClientMain.JOB_ID = JOB_ID;
+		ClientMain.CLIENT_NUM = NODE;
+		ClientMain.N_INSTANCES = PEERS + 1;
+		ClientMain.SORT_PATH = folder.getRoot().getPath() + "/node" + NODE;
+		ClientMain.PEER_ADDRESSES.clear();
+		for (int node = 0; node < PEERS; node++) {
+			ClientMain.PEER_ADDRESSES.put(node, "127.0.0.1:" + startWorker(node, logFile));
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (Process worker : workers) {
+			worker.destroy();
+			worker.waitFor();
+		}
+		ShuffleClient.retryBackoff = retryBackoff;
+		ShuffleClient.readTimeout = readTimeout;
+		ClientMain.PEER_ADDRESSES.clear();
+	}
+
+	/**
+	 * Starts a worker process serving the partitions of the given node.
+	 * @return the port of its shuffle server
+	 */
+	private int startWorker(int node, String logFile) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				ShuffleWorker.class.getName(), JOB_ID, folder.getRoot().getPath() + "/node" + node,
+				String.valueOf(node), logFile);
+		builder.redirectErrorStream(true);
+		Process worker = builder.start();
+		workers.add(worker);
+		BufferedReader out = new BufferedReader(new InputStreamReader(worker.getInputStream()));
+		String line;
+		while ((line = out.readLine()) != null) {
+			if (line.startsWith("PORT ")) {
+				return Integer.parseInt(line.substring(5).trim());
+			}
+		}
+		throw new IOException("Worker " + node + " exited before starting its shuffle server");
+	}
+
+	private void checkFiles(List<String> localFiles) throws IOException {
+		assertEquals(PEERS + 1, localFiles.size());
+		for (int node = 0; node <= PEERS; node++) {
+			assertArrayEquals("partition of node " + node, contents.get(node),
+					Files.readAllBytes(new File(localFiles.get(node)).toPath()));
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, n);
+		}
+		in.close();
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void fetchesFromEveryPeer() throws Exception {
+		String localDir = folder.newFolder("fetched").getPath();
+		checkFiles(ShuffleClient.fetchPartitions(PARTITION, localDir, fallback));
+		assertTrue(fallbacks.isEmpty());
+	}
+
+	@Test
+	public void fallsBackForAPeerThatIsDown() throws Exception {
+		workers.get(2).destroy();
+		workers.get(2).waitFor();
+		String localDir = folder.newFolder("fetched").getPath();
+		checkFiles(ShuffleClient.fetchPartitions(PARTITION, localDir, fallback));
+		assertEquals(Collections.singletonList(2), fallbacks);
+	}
+
+	@Test
+	public void streamsFallBackForAPeerThatIsDown() throws Exception {
+		workers.get(0).destroy();
+		workers.get(0).waitFor();
+		String localDir = folder.newFolder("fetched").getPath();
+		List<String> localFiles = new ArrayList<String>();
+		ExecutorService pool = Executors.newFixedThreadPool(PEERS);
+		try {
+			List<InputStream> streams = ShuffleClient.openPartitions(PARTITION, localDir, localFiles, fallback, pool);
+			assertEquals(PEERS + 1, streams.size());
+			for (int node = 0; node <= PEERS; node++) {
+				assertArrayEquals("partition of node " + node, contents.get(node), readAll(streams.get(node)));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		assertEquals(Collections.singletonList(0), fallbacks);
+	}
+
+	@Test
+	public void fetchesStopWhenThePoolIsShutDown() throws Exception {
+		workers.get(0).destroy();
+		workers.get(0).waitFor();
+		// the backup of the node that is down never arrives
+		PartitionFetcher stuck = new PartitionFetcher() {
+			@Override
+			public void fetch(int partition, int node, String localFile, GrowingFileInputStream stream)
+					throws IOException {
+				try {
+					Thread.sleep(60000);
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException("Interrupted while fetching the backup of node " + node);
+				}
+			}
+		};
+		String localDir = folder.newFolder("fetched").getPath();
+		List<String> localFiles = new ArrayList<String>();
+		ExecutorService pool = Executors.newFixedThreadPool(PEERS);
+		List<InputStream> streams = ShuffleClient.openPartitions(PARTITION, localDir, localFiles, stuck, pool);
+		assertArrayEquals(contents.get(1), readAll(streams.get(1)));
+		pool.shutdownNow();
+		assertTrue("fetch threads still running", pool.awaitTermination(5, TimeUnit.SECONDS));
+		try {
+			readAll(streams.get(0));
+			fail("Reading a partition whose fetch was stopped succeeded");
+		} catch (IOException e) {
+			// the fetch failed, the reader is told
+		}
+	}
+
+	@Test
+	public void fallsBackForAPeerThatStalls() throws Exception {
+		ShuffleClient.readTimeout = 200;
+		// accepts the connections and never answers
+		final ServerSocket stalled = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		final List<Socket> accepted = Collections.synchronizedList(new ArrayList<Socket>());
+		Thread acceptor = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						accepted.add(stalled.accept());
+					}
+				} catch (IOException e) {
+					// closed by the test
+				}
+			}
+		};
+		acceptor.start();
+		try {
+			ClientMain.PEER_ADDRESSES.put(1, "127.0.0.1:" + stalled.getLocalPort());
+			String localDir = folder.newFolder("fetched").getPath();
+			long start = System.currentTimeMillis();
+			checkFiles(ShuffleClient.fetchPartitions(PARTITION, localDir, fallback));
+			assertEquals(Collections.singletonList(1), fallbacks);
+			assertTrue("every attempt timed out", accepted.size() > 1);
+			assertTrue("fetch took too long", System.currentTimeMillis() - start < 10000);
+		} finally {
+			stalled.close();
+			for (Socket socket : accepted) {
+				socket.close();
+			}
+			acceptor.join();
+		}
+	}
+
+	@Test
+	public void failsWithoutFallback() throws Exception {
+		workers.get(1).destroy();
+		workers.get(1).waitFor();
+		String localDir = folder.newFolder("fetched").getPath();
+		try {
+			ShuffleClient.fetchPartitions(PARTITION, localDir, null);
+			fail("Fetching from a peer that is down succeeded");
+		} catch (IOException e) {
+			assertTrue(fallbacks.isEmpty());
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.net;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+import com.main.ClientMain;
+
+/**
+ * A node that only serves its partitions, run as its own process by the shuffle tests. It prints the port
+ * of its shuffle server and serves until its standard input is closed.
+ * Arguments: job id, sort directory, client number, log file.
+ */
+public class ShuffleWorker {
+
+	public static void main(String[] args) throws Exception {
+		System.setProperty("logfile.name", args[3]);
+		ClientMain.JOB_ID = args[0];
+		ClientMain.SORT_PATH = args[1];
+		ClientMain.CLIENT_NUM = Integer.parseInt(args[2]);
+		int port = ShuffleServer.start(0);
+		System.out.println("PORT " + port);
+		System.out.flush();
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		while (in.readLine() != null) {
+		}
+		ShuffleServer.stop();
+		System.exit(0);
+	}
+}
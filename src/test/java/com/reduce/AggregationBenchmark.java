@@ -0,0 +1,175 @@
+package com.reduce;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.main.Context;
+import com.reduce.Aggregations.LongSumCombiner;
+import com.reduce.Aggregations.LongSumReducer;
+import com.sort.KeyComparator;
+import com.sort.SortBuffer;
+import com.utils.RecordReader;
+import com.utils.RecordWriter;
+
+/**
+ * Benchmark of summing long values with the aggregating reducer and combiner, which parse the values from
+ * their bytes, against a reducer and a combiner that decode every value to a String and parse it.
+ * The reducers reduce a sorted file, the combiners combine the runs the sort buffer spills.
+ * Run with: mvn test-compile, then
+ * java -cp target/test-classes:target/classes:$(test classpath) org.openjdk.jmh.Main AggregationBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AggregationBenchmark {
+
+	@Param({ "2000000" })
+	public int records;
+
+	@Param({ "1000" })
+	public int keys;
+
+	private File directory;
+	private File inputFile;
+	private String[] mapKeys;
+	private String[] mapValues;
+
+	/**
+	 * Reducer summing the values decoded to Strings, as a reducer written against Reducer does.
+	 */
+	public static class StringSumReducer extends Reducer {
+		@Override
+		public void reduce(String key, Iterable<String> value, Context context) {
+			long sum = 0;
+			for (String s : value) {
+				sum += Long.parseLong(s);
+			}
+			context.write(key, String.valueOf(sum));
+		}
+	}
+
+	/**
+	 * Combiner summing the values decoded to Strings.
+	 */
+	public static class StringSumCombiner extends Combiner {
+		@Override
+		public void combine(String key, Iterable<String> value, Context context) {
+			long sum = 0;
+			for (String s : value) {
+				sum += Long.parseLong(s);
+			}
+			context.write(key, String.valueOf(sum));
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = File.createTempFile("aggregation", "");
+		directory.delete();
+		directory.mkdirs();
+		Random random = new Random(24);
+		String[] sortedKeys = new String[keys];
+		for (int i = 0; i < keys; i++) {
+			sortedKeys[i] = "key" + i;
+		}
+		Arrays.sort(sortedKeys, KeyComparator.INSTANCE);
+		inputFile = new File(directory, "input");
+		RecordWriter writer = new RecordWriter(inputFile.getPath(), false);
+		try {
+			for (int i = 0; i < records; i++) {
+				writer.write(sortedKeys[(int) ((long) i * keys / records)], String.valueOf(random.nextInt(1000000)));
+			}
+		} finally {
+			writer.close();
+		}
+		mapKeys = new String[records];
+		mapValues = new String[records];
+		for (int i = 0; i < records; i++) {
+			mapKeys[i] = sortedKeys[random.nextInt(keys)];
+			mapValues[i] = String.valueOf(random.nextInt(1000000));
+		}
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteOutput() {
+		for (File file : directory.listFiles()) {
+			if (!file.equals(inputFile)) {
+				file.delete();
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		inputFile.delete();
+		directory.delete();
+	}
+
+	private long reduce(Reducer reducer) throws IOException {
+		File output = new File(directory, "reduced");
+		RecordReader reader = new RecordReader(inputFile.getPath());
+		Context context = new Context();
+		context.setOutputFile(output.getPath());
+		try {
+			GroupingIterator groups = new GroupingIterator(reader);
+			while (groups.nextKey()) {
+				reducer.reduce(groups, context);
+			}
+		} finally {
+			reader.close();
+		}
+		context.close();
+		return output.length();
+	}
+
+	private long combine(Combiner combiner) throws IOException {
+		File output = new File(directory, "combined");
+		// spills about every quarter of the records
+		SortBuffer buffer = new SortBuffer(records / 4 * 100L, combiner);
+		for (int i = 0; i < records; i++) {
+			buffer.add(mapKeys[i], mapValues[i], output.getPath());
+		}
+		buffer.close();
+		return output.length();
+	}
+
+	@Benchmark
+	public long stringSumReducer() throws IOException {
+		return reduce(new StringSumReducer());
+	}
+
+	@Benchmark
+	public long longSumReducer() throws IOException {
+		return reduce(new LongSumReducer());
+	}
+
+	@Benchmark
+	public long stringSumCombiner() throws IOException {
+		return combine(new StringSumCombiner());
+	}
+
+	@Benchmark
+	public long longSumCombiner() throws IOException {
+		return combine(new LongSumCombiner());
+	}
+}
@@ -0,0 +1,76 @@
+package com.sort;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of sorting map output records by their cached key prefixes, as the sort buffer does, against
+ * comparing their keys in full with KeyComparator.INSTANCE.
+ * Run with: mvn test-compile, then
+ * java -cp target/test-classes:target/classes:$(test classpath) org.openjdk.jmh.Main KeyComparatorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class KeyComparatorBenchmark {
+
+	@Param({ "1000000" })
+	public int records;
+
+	private SortObject[] objects;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(18);
+		String[] words = new String[50000];
+		for (int i = 0; i < words.length; i++) {
+			StringBuilder word = new StringBuilder();
+			int length = 3 + random.nextInt(10);
+			for (int j = 0; j < length; j++) {
+				char c = (char) ('a' + random.nextInt(26));
+				word.append(random.nextInt(8) == 0 ? Character.toUpperCase(c) : c);
+			}
+			words[i] = word.toString();
+		}
+		objects = new SortObject[records];
+		for (int i = 0; i < records; i++) {
+			objects[i] = new SortObject(words[random.nextInt(words.length)], "1");
+		}
+	}
+
+	@Benchmark
+	public SortObject[] prefixComparator() {
+		SortObject[] sorted = objects.clone();
+		Arrays.sort(sorted, new SortComparator());
+		return sorted;
+	}
+
+	@Benchmark
+	public SortObject[] fullComparator() {
+		SortObject[] sorted = objects.clone();
+		Arrays.sort(sorted, new Comparator<SortObject>() {
+			@Override
+			public int compare(SortObject o1, SortObject o2) {
+				return KeyComparator.INSTANCE.compare(o1.getKey(), o2.getKey());
+			}
+		});
+		return sorted;
+	}
+}
@@ -0,0 +1,151 @@
+package com.sort;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.main.Context;
+
+/**
+ * Checks that comparing keys by their prefixes agrees with KeyComparator.INSTANCE, on keys built from the
+ * characters case folding and UTF-8 encoding get wrong most easily.
+ */
+public class KeyComparatorTest {
+
+	private static final String[] PIECES = {
+			// ASCII
+			"a", "A", "i", "I", "k", "K", "s", "S", "z", "Z", "0", "~", " ", "\u007f",
+			// Latin-1: micro sign, y with diaeresis, sharp s, e acute
+			"µ", "ÿ", "ß", "é", "É", "\u0080", " ",
+			// dotless i, dotted capital I, long s, capital y with diaeresis, Greek mu, titlecase dz
+			"ı", "İ", "ſ", "Ÿ", "Μ", "μ", "Ǆ", "ǅ", "ǆ",
+			// 2 byte and 3 byte characters: Kelvin sign, euro sign, CJK, last BMP character
+			"߿", "ࠀ", "K", "€", "中", "￮", "￿",
+			// null character
+			"\0",
+			// surrogate pair and lone surrogates
+			"\ud83d\ude00", "\ud801\udc00", "\ud801\udc28", "\ud83d", "\ude00" };
+
+	private Comparator<String> sortComparator;
+
+	@Before
+	public void setUp() {
+		sortComparator = Context.sortComparator;
+		Context.sortComparator = null;
+	}
+
+	@After
+	public void tearDown() {
+		Context.sortComparator = sortComparator;
+	}
+
+	private static void assertAgrees(String s1, String s2) {
+		int expected = Integer.signum(KeyComparator.INSTANCE.compare(s1, s2));
+		int actual = Integer.signum(KeyComparator.compare(s1, KeyComparator.prefix(s1), s2, KeyComparator.prefix(s2)));
+		assertEquals("Comparing \"" + escape(s1) + "\" and \"" + escape(s2) + "\"", expected, actual);
+	}
+
+	private static String escape(String s) {
+		StringBuilder escaped = new StringBuilder();
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 0x20 && c < 0x7f) {
+				escaped.append(c);
+			}
+			else {
+				escaped.append(String.format("\\u%04x", (int) c));
+			}
+		}
+		return escaped.toString();
+	}
+
+	private static String randomKey(Random random, int maxPieces) {
+		StringBuilder key = new StringBuilder();
+		int pieces = random.nextInt(maxPieces + 1);
+		for (int i = 0; i < pieces; i++) {
+			key.append(PIECES[random.nextInt(PIECES.length)]);
+		}
+		return key.toString();
+	}
+
+	@Test
+	public void agreesOnAllPairsOfShortKeys() {
+		List<String> keys = new ArrayList<String>();
+		keys.add("");
+		for (String a : PIECES) {
+			keys.add(a);
+			for (String b : PIECES) {
+				keys.add(a + b);
+			}
+		}
+		for (String s1 : keys) {
+			for (String s2 : keys) {
+				assertAgrees(s1, s2);
+			}
+		}
+	}
+
+	@Test
+	public void agreesOnRandomKeys() {
+		Random random = new Random(18);
+		for (int i = 0; i < 300000; i++) {
+			assertAgrees(randomKey(random, 12), randomKey(random, 12));
+		}
+	}
+
+	@Test
+	public void agreesAroundTheEndOfThePrefix() {
+		Random random = new Random(81);
+		// common parts of 6 to 10 bytes put the first difference just before, at and after the 8th byte
+		String[] common = { "abcdef", "abcdefg", "abcdefgh", "abcdefghi", "ABCDEFGHIJ", "abcéde", "ab€de",
+				"abcdefµ", "abcdefgµ", "abcdef中", "abcde中", "abcdefg\0", "abcdefgh\0" };
+		for (String prefix : common) {
+			for (int i = 0; i < 5000; i++) {
+				assertAgrees(prefix + randomKey(random, 3), prefix + randomKey(random, 3));
+				assertAgrees(prefix + randomKey(random, 3), prefix.toUpperCase() + randomKey(random, 3));
+			}
+		}
+		// keys equal up to trailing null characters, or equal but for case past the prefix
+		assertAgrees("abcdefgh", "abcdefgh\0");
+		assertAgrees("a", "a\0");
+		assertAgrees("\0", "");
+		assertAgrees("abcdefghX", "ABCDEFGHx");
+		assertAgrees("abcdefghx", "abcdefghX");
+	}
+
+	@Test
+	public void sortsLikeTheFullComparator() {
+		Random random = new Random(8);
+		List<SortObject> objects = new ArrayList<SortObject>();
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 100000; i++) {
+			String key = randomKey(random, 6);
+			objects.add(new SortObject(key, ""));
+			keys.add(key);
+		}
+		Collections.sort(objects, new SortComparator());
+		Collections.sort(keys, KeyComparator.INSTANCE);
+		for (int i = 0; i < keys.size(); i++) {
+			assertEquals(keys.get(i), objects.get(i).getKey());
+		}
+	}
+
+	@Test
+	public void prefixIsIgnoredWithASortComparator() {
+		Context.sortComparator = Collections.reverseOrder();
+		assertEquals(KeyComparator.NO_PREFIX, KeyComparator.prefix("abc"));
+		List<String> keys = Arrays.asList("a", "c", "b");
+		Collections.sort(keys, KeyComparator.getSortOrder());
+		assertEquals(Arrays.asList("c", "b", "a"), keys);
+		assertEquals(1, Integer.signum(KeyComparator.compare("a", 0x61L << 56, "b", 0x62L << 56)));
+	}
+}
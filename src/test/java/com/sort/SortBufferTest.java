@@ -0,0 +1,175 @@
+package com.sort;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.main.Context;
+import com.reduce.Aggregations.HistogramCombiner;
+import com.reduce.Aggregations.LongSumCombiner;
+import com.reduce.Aggregator;
+import com.reduce.Combiner;
+import com.utils.RecordReader;
+
+/**
+ * Checks the combine of the runs spilled by the SortBuffer.
+ */
+public class SortBufferTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String outputFile;
+
+	/**
+	 * Combiner working on the decoded values, counting them.
+	 */
+	public static class CountingCombiner extends Combiner {
+		@Override
+		public void combine(String key, Iterable<String> value, Context context) {
+			int count = 0;
+			for (@SuppressWarnings("unused") String s : value) {
+				count++;
+			}
+			context.write(key, String.valueOf(count));
+		}
+	}
+
+	/**
+	 * Histogram combiner with its bucket width in a field, not yet set while AggregatingCombiner is initialized.
+	 */
+	public static class WideHistogramCombiner extends HistogramCombiner {
+		private final long width;
+
+		public WideHistogramCombiner() {
+			this.width = 10;
+		}
+
+		@Override
+		protected long getBucketWidth() {
+			return width;
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		System.setProperty("logfile.name", folder.newFile("client.log").getPath());
+		Context.sortComparator = null;
+		Context.groupingComparator = null;
+		outputFile = folder.getRoot().getPath() + "/out";
+	}
+
+	@After
+	public void tearDown() {
+		Context.sortComparator = null;
+		Context.groupingComparator = null;
+	}
+
+	private HashMap<String, List<String>> readOutput() throws IOException {
+		HashMap<String, List<String>> output = new HashMap<String, List<String>>();
+		RecordReader reader = new RecordReader(outputFile);
+		try {
+			String previous = null;
+			while (reader.next()) {
+				String key = reader.getKey();
+				if (previous != null) {
+					assertTrue("keys out of order", KeyComparator.INSTANCE.compare(previous, key) <= 0);
+				}
+				previous = key;
+				List<String> values = output.get(key);
+				if (values == null) {
+					values = new ArrayList<String>();
+					output.put(key, values);
+				}
+				values.add(reader.getValue());
+			}
+		} finally {
+			reader.close();
+		}
+		return output;
+	}
+
+	@Test
+	public void combinesEverySpilledRunFromItsBytes() throws IOException {
+		// small enough to spill several times
+		SortBuffer buffer = new SortBuffer(20000, new LongSumCombiner());
+		Random random = new Random(24);
+		HashMap<String, Long> sums = new HashMap<String, Long>();
+		for (int i = 0; i < 5000; i++) {
+			String key = "k" + random.nextInt(50);
+			long value = random.nextInt(1000) - 100;
+			Long sum = sums.get(key);
+			sums.put(key, (sum == null ? 0 : sum) + value);
+			buffer.add(key, String.valueOf(value), outputFile);
+		}
+		buffer.close();
+		HashMap<String, List<String>> output = readOutput();
+		assertEquals(sums.keySet(), output.keySet());
+		for (String key : sums.keySet()) {
+			List<String> partials = output.get(key);
+			assertTrue("one partial per run", partials.size() > 1);
+			long sum = 0;
+			for (String partial : partials) {
+				sum += Long.parseLong(partial);
+			}
+			assertEquals(key, sums.get(key).longValue(), sum);
+		}
+	}
+
+	@Test
+	public void combinesDecodedValues() throws IOException {
+		SortBuffer buffer = new SortBuffer(Long.MAX_VALUE, new CountingCombiner());
+		for (String key : Arrays.asList("b", "a", "µ", "b", "a", "b")) {
+			buffer.add(key, "é", outputFile);
+		}
+		buffer.close();
+		HashMap<String, List<String>> output = readOutput();
+		assertEquals(Arrays.asList("2"), output.get("a"));
+		assertEquals(Arrays.asList("3"), output.get("b"));
+		assertEquals(Arrays.asList("1"), output.get("µ"));
+	}
+
+	@Test
+	public void combinesEveryKeyOfAGroupApart() throws IOException {
+		// groups the keys by the part before '#', as a secondary sort does
+		Context.groupingComparator = new Comparator<String>() {
+			@Override
+			public int compare(String s1, String s2) {
+				return s1.split("#")[0].compareTo(s2.split("#")[0]);
+			}
+		};
+		SortBuffer buffer = new SortBuffer(Long.MAX_VALUE, new CountingCombiner());
+		for (String key : Arrays.asList("a#2", "a#1", "b#1", "a#2", "a#1", "a#2")) {
+			buffer.add(key, "x", outputFile);
+		}
+		buffer.close();
+		HashMap<String, List<String>> output = readOutput();
+		assertEquals(3, output.size());
+		assertEquals(Arrays.asList("2"), output.get("a#1"));
+		assertEquals(Arrays.asList("3"), output.get("a#2"));
+		assertEquals(Arrays.asList("1"), output.get("b#1"));
+	}
+
+	@Test
+	public void createsTheAggregatorOfASubclassOnFirstUse() throws IOException {
+		SortBuffer buffer = new SortBuffer(Long.MAX_VALUE, new WideHistogramCombiner());
+		for (String value : Arrays.asList("1", "5", "12")) {
+			buffer.add("a", value, outputFile);
+		}
+		buffer.close();
+		assertEquals(Arrays.asList(Aggregator.PARTIAL + "0:2,10:1"), readOutput().get("a"));
+	}
+}
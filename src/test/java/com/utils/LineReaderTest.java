@@ -0,0 +1,68 @@
+package com.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that lines read as Strings and through a TextView are the same, decoded as UTF-8 whatever the
+ * platform charset.
+ */
+public class LineReaderTest {
+
+	private static final String[] PIECES = { "a", "Z", " ", "\t", "µ", "ÿ", "é", "€", "中", "😀" };
+
+	private static List<String> randomLines(Random random, int count) {
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			StringBuilder line = new StringBuilder();
+			// some lines longer than the read buffer
+			int length = random.nextInt(50) == 0 ? 70000 : random.nextInt(200);
+			while (line.length() < length) {
+				line.append(PIECES[random.nextInt(PIECES.length)]);
+			}
+			lines.add(line.toString());
+		}
+		return lines;
+	}
+
+	private static byte[] encode(List<String> lines) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < lines.size(); i++) {
+			text.append(lines.get(i)).append(i % 3 == 0 ? "\r\n" : "\n");
+		}
+		return text.toString().getBytes(RecordWriter.CHARSET);
+	}
+
+	@Test
+	public void readsStringsAsUtf8() throws IOException {
+		List<String> lines = randomLines(new Random(25), 2000);
+		LineReader reader = new LineReader(new ByteArrayInputStream(encode(lines)));
+		for (String line : lines) {
+			assertEquals(line, reader.readLine());
+		}
+		assertNull(reader.readLine());
+	}
+
+	@Test
+	public void readsViewsLikeStrings() throws IOException {
+		List<String> lines = randomLines(new Random(52), 2000);
+		LineReader reader = new LineReader(new ByteArrayInputStream(encode(lines)));
+		TextView view = new TextView();
+		for (String line : lines) {
+			assertTrue(reader.readLine(view));
+			assertEquals(line, view.toString());
+			assertTrue(view.contentEquals(line));
+		}
+		assertFalse(reader.readLine(view));
+	}
+}
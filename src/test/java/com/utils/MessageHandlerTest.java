@@ -0,0 +1,20 @@
+package com.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+public class MessageHandlerTest {
+
+	@Test
+	public void fieldsWithSeparatorsRoundTrip() {
+		String[] fields = { "3f2a-uuid", "s3://in_bucket/my_input/", "s3://out/a_b_c", "HASH", "40123" };
+		assertArrayEquals(fields, MessageHandler.splitFields(MessageHandler.joinFields(fields)));
+	}
+
+	@Test
+	public void escapeSequencesInFieldsRoundTrip() {
+		String[] fields = { "%5F", "%25_%", "", "a%%_%5F_" };
+		assertArrayEquals(fields, MessageHandler.splitFields(MessageHandler.joinFields(fields)));
+	}
+}
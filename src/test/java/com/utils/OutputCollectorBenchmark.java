@@ -0,0 +1,91 @@
+package com.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of writing the records of a task to a local file through the OutputCollector, against opening,
+ * appending one line to and closing the file for every record as Context.write used to.
+ * Run with: mvn test-compile, then
+ * java -cp target/test-classes:target/classes:$(test classpath) org.openjdk.jmh.Main OutputCollectorBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class OutputCollectorBenchmark {
+
+	@Param({ "10000000" })
+	public int records;
+
+	private File file;
+	private String[] keys;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		keys = new String[1000];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = "word" + i;
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void createFile() throws IOException {
+		file = File.createTempFile("collector", ".out");
+	}
+
+	@TearDown(Level.Iteration)
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Benchmark
+	public long collector() throws IOException {
+		OutputCollector collector = new OutputCollector(true);
+		String path = file.getPath();
+		for (int i = 0; i < records; i++) {
+			collector.write(keys[i % keys.length], "1", path);
+		}
+		collector.close();
+		return file.length();
+	}
+
+	/**
+	 * The write path Context.write had before the OutputCollector.
+	 */
+	@Benchmark
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	public long openPerRecord() throws IOException {
+		String path = file.getPath();
+		for (int i = 0; i < records; i++) {
+			FileOutputStream out = new FileOutputStream(path, true);
+			try {
+				String line = keys[i % keys.length] + "\t" + "1";
+				line += System.getProperty("line.separator");
+				out.write(line.getBytes());
+			} finally {
+				out.close();
+			}
+		}
+		return file.length();
+	}
+}
@@ -0,0 +1,99 @@
+package com.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that the OutputCollector closes or aborts every file and reports the failures.
+ */
+public class OutputCollectorTest {
+
+	/**
+	 * Sink recording how it was closed, failing to close if asked to.
+	 */
+	private static class TestSink implements RecordSink {
+		private boolean failing;
+		private String closedBy;
+
+		public TestSink(boolean failing) {
+			this.failing = failing;
+		}
+
+		@Override
+		public void write(String key, String value) {
+		}
+
+		@Override
+		public void close() throws IOException {
+			closedBy = "close";
+			if (failing) {
+				throw new IOException("close failed");
+			}
+		}
+
+		@Override
+		public void abort() throws IOException {
+			closedBy = "abort";
+			if (failing) {
+				throw new IOException("abort failed");
+			}
+		}
+	}
+
+	/**
+	 * Collector opening a TestSink per file, the files named "fail" fail to close.
+	 */
+	private static class TestCollector extends OutputCollector {
+		private List<TestSink> sinks = new ArrayList<TestSink>();
+
+		@Override
+		protected RecordSink open(String filePath) {
+			TestSink sink = new TestSink(filePath.startsWith("fail"));
+			sinks.add(sink);
+			return sink;
+		}
+	}
+
+	@Test
+	public void closeReportsFailuresAfterClosingEveryFile() throws IOException {
+		TestCollector collector = new TestCollector();
+		collector.write("a", "1", "ok-1");
+		collector.write("a", "1", "fail-1");
+		collector.write("a", "1", "fail-2");
+		collector.write("a", "1", "ok-2");
+		try {
+			collector.close();
+			fail("close should fail");
+		} catch (IOException e) {
+			assertEquals(1, e.getSuppressed().length);
+		}
+		for (TestSink sink : collector.sinks) {
+			assertEquals("close", sink.closedBy);
+		}
+		// the files are forgotten, closing again does nothing
+		collector.close();
+	}
+
+	@Test
+	public void abortAbortsEveryFile() throws IOException {
+		TestCollector collector = new TestCollector();
+		collector.write("a", "1", "ok-1");
+		collector.write("a", "1", "fail-1");
+		try {
+			collector.abort();
+			fail("abort should fail");
+		} catch (IOException e) {
+			assertEquals("abort failed", e.getMessage());
+		}
+		for (TestSink sink : collector.sinks) {
+			assertEquals("abort", sink.closedBy);
+		}
+		assertEquals(2, collector.sinks.size());
+	}
+}